@@ -25,8 +25,8 @@
 
 package frogger;
 
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Random;
 import java.util.LinkedList;
 
 import jig.engine.ResourceFactory;
@@ -46,43 +46,43 @@ public class AudioEfx {
 	FroggerCollisionDetection fc;
 	Frogger frog;
 	
-	public static final Random rand = new Random(System.currentTimeMillis());
+	// Picks the ambient effects, seeded by the world
+	private final GameRandom rand;
 	
 	// Background music
 	private AudioStream gameMusic;
 	
 	public static final String A_FX_PATH = Main.RSC_PATH + "ambient_fx/";
 	
-	public static final AudioClip frogJump = ResourceFactory.getFactory().getAudioClip(
-			Main.RSC_PATH + "jump.wav");
-	
-	public static final AudioClip frogDie = ResourceFactory.getFactory().getAudioClip(
-			Main.RSC_PATH + "frog_die.ogg");	
-
-	public static final AudioClip frogGoal = ResourceFactory.getFactory().getAudioClip(
-			Main.RSC_PATH + "goal.ogg");
-	
-	public static final AudioClip levelGoal = ResourceFactory.getFactory().getAudioClip(
-			Main.RSC_PATH + "level_goal.ogg");
-
-	public static final AudioClip wind = ResourceFactory.getFactory().getAudioClip(
-			Main.RSC_PATH + "wind.ogg");
-	
-	public static final AudioClip heat = ResourceFactory.getFactory().getAudioClip(
-			Main.RSC_PATH + "match.ogg");
-	
-	public static final AudioClip bonus = ResourceFactory.getFactory().getAudioClip(
-			Main.RSC_PATH + "bonus.ogg");	
-	
-	public static final AudioClip siren = ResourceFactory.getFactory().getAudioClip(
-			A_FX_PATH + "siren.ogg");
+	// Clips stay null until loadClips(), headless worlds never load them
+	public static AudioClip frogJump;
+	public static AudioClip frogDie;
+	public static AudioClip frogGoal;
+	public static AudioClip levelGoal;
+	public static AudioClip wind;
+	public static AudioClip heat;
+	public static AudioClip bonus;
+	public static AudioClip siren;
 	
 	// one effect is randomly picked from road_effects or water_effects every couple of seconds
 	private List<AudioClip> roadEffects = new LinkedList<>();
 	private List<AudioClip> waterEffects = new LinkedList<>();
 	
 	private int effectsDelay = 3000;
-	private int deltaT = 0;
+	
+	// Play time the next ambient effect may play
+	private final Scheduler time;
+	private boolean isReady;
+	private long readyMs;
+	
+	// Thins out ambient effects under load, null plays them all
+	private QualityGovernor quality = null;
+	
+	private final Scheduler.Task ready = new Scheduler.Task() {
+		public void run(Scheduler s) {
+			isReady = true;
+		}
+	};
 	
 	/**
 	 * In order to know when to play-back certain effects, we track the state of 
@@ -90,9 +90,12 @@ public class AudioEfx {
 	 * @param f
 	 * @param frg
 	 */
-	public AudioEfx(FroggerCollisionDetection f, Frogger frg) {
+	public AudioEfx(FroggerCollisionDetection f, Frogger frg, long seed, Scheduler playTime) {
 		fc = f;
 		frog = frg;
+		rand = new GameRandom(seed);
+		time = playTime;
+		rearm();
 		
 		roadEffects.add(ResourceFactory.getFactory().getAudioClip(A_FX_PATH + "long-horn.ogg"));
 	    roadEffects.add(ResourceFactory.getFactory().getAudioClip(A_FX_PATH + "car-pass.ogg"));
@@ -105,6 +108,28 @@ public class AudioEfx {
 		gameMusic = new AudioStream(Main.RSC_PATH + "bg_music.ogg");
 	}
 	
+	/**
+	 * Load the shared sound effects, needs a working sound device
+	 */
+	public static void loadClips() {
+		frogJump  = ResourceFactory.getFactory().getAudioClip(Main.RSC_PATH + "jump.wav");
+		frogDie   = ResourceFactory.getFactory().getAudioClip(Main.RSC_PATH + "frog_die.ogg");
+		frogGoal  = ResourceFactory.getFactory().getAudioClip(Main.RSC_PATH + "goal.ogg");
+		levelGoal = ResourceFactory.getFactory().getAudioClip(Main.RSC_PATH + "level_goal.ogg");
+		wind      = ResourceFactory.getFactory().getAudioClip(Main.RSC_PATH + "wind.ogg");
+		heat      = ResourceFactory.getFactory().getAudioClip(Main.RSC_PATH + "match.ogg");
+		bonus     = ResourceFactory.getFactory().getAudioClip(Main.RSC_PATH + "bonus.ogg");
+		siren     = ResourceFactory.getFactory().getAudioClip(A_FX_PATH + "siren.ogg");
+	}
+	
+	/**
+	 * Play a shared effect if the clips have been loaded
+	 */
+	public static void play(AudioClip clip, double volume) {
+		if (clip != null)
+			clip.play(volume);
+	}
+	
 	public void playGameMusic() {
 	    gameMusic.loop(0.2, 0);
 	}
@@ -114,22 +139,57 @@ public class AudioEfx {
 		levelGoal.play(2.0);
 	}
 	
-	public void playRandomAmbientSound(final long deltaMs) {
-		deltaT += deltaMs;
-		
-		if (deltaT > effectsDelay && fc.isOnRoad()) {
-			deltaT = 0;
-			roadEffects.get(rand.nextInt(roadEffects.size())).play(0.2);
+	public void playRandomAmbientSound() {
+		if (isReady && fc.isOnRoad()) {
+			rearm();
+			playAmbient(roadEffects.get(rand.nextInt(roadEffects.size())));
 		}
 		
-		if (deltaT > effectsDelay && fc.isInRiver()) {
-			deltaT = 0;
-			waterEffects.get(rand.nextInt(roadEffects.size())).play(0.2);
+		if (isReady && fc.isInRiver()) {
+			rearm();
+			playAmbient(waterEffects.get(rand.nextInt(roadEffects.size())));
 		}
 	}
 	
-	public void update(final long deltaMs) {
-		playRandomAmbientSound(deltaMs);
+	// the effect is picked either way, so skipping one changes nothing else
+	private void playAmbient(AudioClip clip) {
+		if (quality == null || quality.keepAmbient())
+			clip.play(0.2);
+	}
+	
+	public void setQuality(QualityGovernor q) {
+		quality = q;
+	}
+	
+	private void rearm() {
+		isReady = false;
+		readyMs = time.now() + effectsDelay;
+		time.at(readyMs, ready);
+	}
+	
+	public void saveState(ByteBuffer b) {
+		b.put((byte) (isReady ? 1 : 0));
+		b.putLong(readyMs);
+		b.putLong(rand.getState());
+	}
+	
+	public void restoreState(ByteBuffer b) {
+		isReady = b.get() != 0;
+		readyMs = b.getLong();
+		rand.setState(b.getLong());
+		if (!isReady)
+			time.at(readyMs, ready);
+	}
+	
+	/**
+	 * Step over audio state in a snapshot taken from a world with sound
+	 */
+	public static void skipState(ByteBuffer b) {
+		b.position(b.position() + 1 + 8 + 8);
+	}
+	
+	public void update() {
+		playRandomAmbientSound();
 		
 		if (frog.isAlive() && (gameMusic.getState() == AudioState.PAUSED))
 			gameMusic.resume();
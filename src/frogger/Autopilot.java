@@ -0,0 +1,379 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jig.engine.physics.AbstractBodyLayer;
+import jig.engine.util.Vector2D;
+
+/**
+ * Autopilot that plays Frogger on its own, for demo kiosks and regression play
+ * 
+ * The planner works on a time expanded grid: columns x rows x HORIZON
+ * future steps, at most MAX_COLS columns around the frog. Lane occupancy
+ * for every future step is predicted from the current entity positions
+ * and velocities and stored as one bit mask per row, then every possible
+ * first move is explored on its own ForkJoin task by flooding the
+ * reachable cells forward in time.
+ * 
+ * @author vitaliy
+ *
+ */
+public class Autopilot {
+	
+	// widest window planned over, one bit per column
+	static final int MAX_COLS = 63;
+	
+	static final int HORIZON = 48;  // future steps looked at
+	static final int STEP_MS = 100; // one step roughly covers a jump animation
+	
+	static final int WAIT  = 0;
+	static final int UP    = 1;
+	static final int LEFT  = 2;
+	static final int RIGHT = 3;
+	static final int DOWN  = 4;
+	
+	private static final int GOAL_ROW = WorldLayout.GOAL_ROW;
+	
+	Logger logger = Logger.getLogger(getClass().getName());
+	
+	private final ForkJoinPool pool;
+	private final WorldLayout layout;
+	
+	// Wider worlds are planned in a window of MAX_COLS columns around the frog
+	private final int cols;
+	private final int rows;
+	private final long allCols;
+	private int offset = 0;
+	
+	// safe[t][row] has a bit set for every column the frog can stand on at step t
+	private final long[][] safe;
+	// columns that a floating frog drifts by from step t to t+1, per river row
+	private final int[][] drift;
+	private final double[] rowVelocity;
+	
+	private long lastPlanNanos = 0;
+	private long maxPlanNanos = 0;
+	private long totalPlanNanos = 0;
+	private int decisions = 0;
+	
+	public Autopilot(WorldLayout l) {
+		this(l, ForkJoinPool.commonPool());
+	}
+	
+	public Autopilot(WorldLayout l, ForkJoinPool p) {
+		pool = p;
+		layout = l;
+		cols = Math.min(MAX_COLS, l.getColumns());
+		rows = l.getRows();
+		allCols = (1L << cols) - 1;
+		
+		safe = new long[HORIZON + 1][rows];
+		drift = new int[HORIZON + 1][rows];
+		rowVelocity = new double[rows];
+	}
+	
+	/**
+	 * Called every game update while the autopilot is on
+	 * 
+	 * A new plan is only made when the frog can actually move
+	 */
+	public void update(Frogger f, AbstractBodyLayer<MovingEntity> l, GoalManager goals) {
+		if (!f.isAlive() || f.isAnimating())
+			return;
+		
+		long t0 = System.nanoTime();
+		int action = plan(f, l, goals);
+		long dt = System.nanoTime() - t0;
+		
+		lastPlanNanos = dt;
+		totalPlanNanos += dt;
+		if (dt > maxPlanNanos)
+			maxPlanNanos = dt;
+		decisions++;
+		if (logger.isLoggable(Level.FINE))
+			logger.fine("autopilot decision " + action + " planned in " + dt/1000 + " us");
+		
+		switch(action) {
+		case UP:
+			f.moveUp();
+			break;
+		case LEFT:
+			f.moveLeft();
+			break;
+		case RIGHT:
+			f.moveRight();
+			break;
+		case DOWN:
+			f.moveDown();
+			break;
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Pick the best first move for the frog
+	 * 
+	 * @return - one of WAIT, UP, LEFT, RIGHT, DOWN
+	 */
+	public int plan(Frogger f, AbstractBodyLayer<MovingEntity> l, GoalManager goals) {
+		Vector2D p = f.getPosition();
+		int col = (int) Math.floor((p.getX() + 16) / 32);
+		int row = (int) Math.round(p.getY() / 32);
+		
+		offset = Math.max(0, Math.min(layout.getColumns() - cols, col - cols / 2));
+		col -= offset;
+		predict(l, goals);
+		
+		if (col < 0 || col >= cols || row < 0 || row >= rows)
+			return WAIT;
+		
+		Search[] tasks = new Search[DOWN + 1];
+		for (int a = WAIT; a <= DOWN; a++) {
+			tasks[a] = new Search(a, col, row);
+			pool.execute(tasks[a]);
+		}
+		
+		int best = WAIT;
+		long bestScore = Long.MIN_VALUE;
+		for (int a = WAIT; a <= DOWN; a++) {
+			long s = tasks[a].join();
+			if (s > bestScore) {
+				bestScore = s;
+				best = a;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Fill in the safe masks for every step of the horizon
+	 */
+	private void predict(AbstractBodyLayer<MovingEntity> l, GoalManager goals) {
+		for (int r = 0; r < rows; r++)
+			rowVelocity[r] = 0;
+		
+		for (int t = 0; t <= HORIZON; t++) {
+			long[] s = safe[t];
+			for (int r = 0; r < rows; r++) {
+				if (r == GOAL_ROW || isRiverRow(r) || r == 0)
+					s[r] = 0;
+				else
+					s[r] = allCols;
+			}
+		}
+		
+		for (Goal g : goals.get()) {
+			if (g.isReached)
+				continue;
+			int c = (int) Math.round(g.getPosition().getX() / 32) - offset;
+			if (c < 0 || c >= cols)
+				continue;
+			long bit = 1L << c;
+			for (int t = 0; t <= HORIZON; t++)
+				safe[t][GOAL_ROW] |= bit;
+		}
+		
+		// Platforms first, so that a crocodile head cuts into a log under it
+		mark(l, false);
+		mark(l, true);
+		
+		for (int r = 0; r < rows; r++) {
+			if (!isRiverRow(r))
+				continue;
+			for (int t = 0; t < HORIZON; t++) {
+				drift[t][r] = (int) (Math.round(rowVelocity[r]*STEP_MS*(t+1)/32) - 
+						Math.round(rowVelocity[r]*STEP_MS*t/32));
+			}
+		}
+	}
+	
+	/**
+	 * Project every collision sphere of every entity forward in time
+	 * 
+	 * @param hazards - true marks dangerous spheres, false marks platforms
+	 */
+	private void mark(AbstractBodyLayer<MovingEntity> l, boolean hazards) {
+		for (MovingEntity m : l) {
+			if (!m.isActive() || m instanceof Goal)
+				continue;
+			
+			int r = (int) Math.round(m.getPosition().getY() / 32);
+			if (r <= 0 || r >= rows)
+				continue;
+			
+			double vx = m.getVelocity().getX();
+			boolean river = isRiverRow(r);
+			if (river)
+				rowVelocity[r] = vx;
+			
+			CollisionShape shape = m.getShape();
+			for (int i = 0; i < shape.size(); i++) {
+				boolean hazard = !river || (m instanceof Crocodile && i == ((Crocodile) m).head);
+				if (hazard != hazards)
+					continue;
+				
+				double reach = 15 + shape.getRadius(i);
+				double cx = m.getSphereX(i);
+				
+				for (int t = 0; t <= HORIZON; t++) {
+					double x0 = cx + vx*t*STEP_MS;
+					if (hazard) {
+						// hazards are swept over the whole step
+						double x1 = x0 + vx*STEP_MS;
+						safe[t][r] &= ~columns(Math.min(x0, x1) - reach, Math.max(x0, x1) + reach);
+					} else {
+						safe[t][r] |= columns(x0 - reach, x0 + reach);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Bit mask of the window columns whose centre lies strictly inside (x0, x1)
+	 */
+	private long columns(double x0, double x1) {
+		x0 -= offset*32;
+		x1 -= offset*32;
+		int c0 = (int) Math.max(0, Math.floor((x0 - 16) / 32) + 1);
+		int c1 = (int) Math.min(cols - 1, Math.ceil((x1 - 16) / 32) - 1);
+		if (c1 < c0)
+			return 0;
+		return ((1L << (c1 + 1)) - 1) & ~((1L << c0) - 1);
+	}
+	
+	private boolean isRiverRow(int r) {
+		return layout.isRiverRow(r);
+	}
+	
+	/**
+	 * Flood the reachable cells after taking one first action
+	 * 
+	 * Score favours reaching a goal early, then the highest row that can still
+	 * be held at the end of the horizon
+	 */
+	private class Search extends RecursiveTask<Long> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final int action;
+		private final int col;
+		private final int row;
+		
+		Search(int a, int c, int r) {
+			action = a;
+			col = c;
+			row = r;
+		}
+		
+		@Override
+		protected Long compute() {
+			long[] cur = new long[rows];
+			long[] next = new long[rows];
+			
+			int c = col;
+			int r = row;
+			switch(action) {
+			case UP:    r -= 2; break;
+			case DOWN:  r += 1; break;
+			case LEFT:  c -= 1; break;
+			case RIGHT: c += 1; break;
+			default:    c += drift[0][row]; break;
+			}
+			
+			if ((action == LEFT && col < 1) || (action == RIGHT && col > cols - 2) ||
+					(action == UP && row < 2) || (action == DOWN && row > rows - 2))
+				return Long.MIN_VALUE;
+			if (r < 0 || r >= rows || c < 0 || c >= cols || (safe[1][r] & (1L << c)) == 0)
+				return Long.MIN_VALUE + 1;
+			cur[r] = 1L << c;
+			
+			if (r == GOAL_ROW)
+				return score(1, r);
+			
+			int bestRow = r;
+			for (int t = 1; t < HORIZON; t++) {
+				boolean any = false;
+				for (int y = 0; y < rows; y++) {
+					long stay = shift(cur[y], drift[t][y]);
+					long side = ((cur[y] & (allCols >>> 1)) << 1) | ((cur[y] & ~1L) >>> 1);
+					long up = y + 2 < rows ? cur[y + 2] : 0;
+					long down = y > 1 ? cur[y - 1] : 0;
+					next[y] = (stay | side | up | down) & safe[t + 1][y] & allCols;
+					if (next[y] != 0) {
+						any = true;
+						if (y < bestRow)
+							bestRow = y;
+					}
+				}
+				if (!any)
+					return Long.MIN_VALUE + 2 + t;
+				if (next[GOAL_ROW] != 0)
+					return score(t + 1, GOAL_ROW);
+				
+				long[] tmp = cur;
+				cur = next;
+				next = tmp;
+			}
+			return score(HORIZON, bestRow);
+		}
+		
+		private long score(int t, int bestRow) {
+			// Prefer moving forward over waiting when otherwise even
+			return ((rows - bestRow) * 1000L - t) * 2 + (action == UP ? 1 : 0);
+		}
+		
+		private long shift(long m, int d) {
+			if (d > 0)
+				return (m << d) & allCols;
+			if (d < 0)
+				return m >>> -d;
+			return m;
+		}
+	}
+	
+	public long getLastPlanNanos() {
+		return lastPlanNanos;
+	}
+	
+	public long getMaxPlanNanos() {
+		return maxPlanNanos;
+	}
+	
+	public long getMeanPlanNanos() {
+		return decisions == 0 ? 0 : totalPlanNanos / decisions;
+	}
+	
+	public int getDecisions() {
+		return decisions;
+	}
+}
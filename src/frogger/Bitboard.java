@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.Arrays;
+import java.util.List;
+
+import jig.engine.physics.AbstractBodyLayer;
+
+/**
+ * Occupancy of the playfield as bit masks, one bit per column of a row
+ * 
+ * HAZARDS has the columns where a frog would be hit, PLATFORMS where it
+ * would float, GOALS the unreached goals. SAFE combines them with the row 
+ * kinds of the layout: goals on the goal row, platforms without hazards on
+ * the river, no hazards elsewhere. A column counts as occupied when the
+ * centre of a frog standing there would touch a sphere, the same test as
+ * FroggerCollisionDetection.
+ * 
+ * Rows take (columns + 63) / 64 words, a single long on layouts up to 64
+ * columns. FroggerWorld.getBitboard() rebuilds it at most once per tick.
+ * 
+ * @author vitaliy
+ *
+ */
+public class Bitboard {
+	
+	public static final int HAZARDS   = 0;
+	public static final int PLATFORMS = 1;
+	public static final int GOALS     = 2;
+	public static final int SAFE      = 3;
+	private static final int KINDS    = 4;
+	
+	private static final double FROG_RADIUS = CollisionShape.FROG.getRadius(0);
+	
+	private final WorldLayout layout;
+	private final int cols;
+	private final int rows;
+	private final int words;
+	
+	// bits[kind][row * words + word]
+	private final long[][] bits;
+	// valid columns of the last word of a row
+	private final long lastMask;
+	
+	public Bitboard(WorldLayout l) {
+		layout = l;
+		cols = l.getColumns();
+		rows = l.getRows();
+		words = (cols + 63) / 64;
+		bits = new long[KINDS][rows * words];
+		lastMask = cols % 64 == 0 ? -1L : (1L << (cols % 64)) - 1;
+	}
+	
+	/**
+	 * Work out every mask from the current entity positions
+	 */
+	public void build(AbstractBodyLayer<MovingEntity> l, List<Goal> goals) {
+		for (long[] b : bits)
+			Arrays.fill(b, 0);
+		
+		for (Goal g : goals) {
+			if (!g.isReached)
+				set(GOALS, (int) Math.round(g.getPosition().getX() / 32), WorldLayout.GOAL_ROW);
+		}
+		
+		for (int i = 0; i < l.size(); i++) {
+			MovingEntity m = l.get(i);
+			if (!m.isActive() || m instanceof Goal)
+				continue;
+			
+			int r = (int) Math.round(m.getPosition().getY() / 32);
+			if (r <= 0 || r >= rows)
+				continue;
+			boolean river = layout.isRiverRow(r);
+			
+			CollisionShape shape = m.getShape();
+			for (int s = 0; s < shape.size(); s++) {
+				boolean hazard = !river || (m instanceof Crocodile && s == ((Crocodile) m).head);
+				double reach = FROG_RADIUS + shape.getRadius(s);
+				double x = m.getSphereX(s);
+				
+				// columns whose centre lies strictly inside (x - reach, x + reach)
+				int c0 = (int) Math.max(0, Math.floor((x - reach - 16) / 32) + 1);
+				int c1 = (int) Math.min(cols - 1, Math.ceil((x + reach - 16) / 32) - 1);
+				for (int c = c0; c <= c1; c++)
+					set(hazard ? HAZARDS : PLATFORMS, c, r);
+			}
+		}
+		
+		long[] safe = bits[SAFE];
+		for (int r = 1; r < rows; r++) {
+			for (int w = 0; w < words; w++) {
+				int i = r * words + w;
+				long all = w == words - 1 ? lastMask : -1L;
+				if (r == WorldLayout.GOAL_ROW)
+					safe[i] = bits[GOALS][i];
+				else if (layout.isRiverRow(r))
+					safe[i] = bits[PLATFORMS][i] & ~bits[HAZARDS][i];
+				else
+					safe[i] = all & ~bits[HAZARDS][i];
+			}
+		}
+	}
+	
+	private void set(int kind, int col, int row) {
+		if (col < 0 || col >= cols)
+			return;
+		bits[kind][row * words + (col >>> 6)] |= 1L << col;
+	}
+	
+	/**
+	 * @return - columns 64*word to 64*word + 63 of a row
+	 */
+	public long get(int kind, int row, int word) {
+		return bits[kind][row * words + word];
+	}
+	
+	/**
+	 * @return - the whole row, on layouts of up to 64 columns
+	 */
+	public long get(int kind, int row) {
+		return bits[kind][row * words];
+	}
+	
+	/**
+	 * @return - 64 columns of a row from fromCol on, cells off the world are 0
+	 */
+	public long window(int kind, int row, int fromCol) {
+		if (row < 0 || row >= rows || fromCol >= cols || fromCol <= -64)
+			return 0;
+		if (fromCol < 0)
+			return window(kind, row, 0) << -fromCol;
+		
+		long[] b = bits[kind];
+		int w = fromCol >>> 6;
+		int shift = fromCol & 63;
+		long lo = b[row * words + w] >>> shift;
+		if (shift == 0 || w + 1 >= words)
+			return lo;
+		return lo | (b[row * words + w + 1] << (64 - shift));
+	}
+	
+	public boolean test(int kind, int col, int row) {
+		if (col < 0 || col >= cols || row < 0 || row >= rows)
+			return false;
+		return (bits[kind][row * words + (col >>> 6)] & (1L << col)) != 0;
+	}
+	
+	public boolean isSafe(int col, int row) {
+		return test(SAFE, col, row);
+	}
+	
+	/**
+	 * @return - column of a sprite at x, the one its centre is in
+	 */
+	public static int col(double x) {
+		return (int) Math.floor((x + 16) / 32);
+	}
+	
+	/**
+	 * @return - row of a sprite at y
+	 */
+	public static int row(double y) {
+		return (int) Math.round(y / 32);
+	}
+	
+	public int getColumns() {
+		return cols;
+	}
+	
+	public int getRows() {
+		return rows;
+	}
+	
+	public int getWords() {
+		return words;
+	}
+}
\ No newline at end of file
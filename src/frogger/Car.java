@@ -31,10 +31,13 @@ public class Car extends MovingEntity {
 	public static final int TYPES  = 3;
 	public static final int LENGTH = 32*1;
 	
+	// Which of the car sprites this one uses
+	protected final int variant;
+	
 	public Car (Vector2D pos, Vector2D v, int randId) {
-		super(Main.SPRITE_SHEET + "#car" + randId);
+		super(SpriteKind.car(randId));
+		variant = randId;
 		position = pos;
-		collisionObjects.add(new CollisionObject(position));
 		velocity = v;
 		if (v.getX() < 0)
 			setFrame(1);
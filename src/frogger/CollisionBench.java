@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import jig.engine.physics.AbstractBodyLayer;
+import jig.engine.util.Vector2D;
+
+/**
+ * Benchmark of the sprite pixel collision against the sphere scan
+ * 
+ * Usage: CollisionBench [-seed N] [-states N] [-rounds N] [-millis N]
+ * 
+ * A headless world (-Dfrogger.layout applies) runs its traffic and the frog
+ * is put on every cell of the playfield, both searches look for what it 
+ * touches. First over a number of traffic states to count where they 
+ * disagree, then timed in turns on the last state, the first rounds only
+ * warm up the JIT. Reports nanoseconds per search of the whole layer.
+ * 
+ * @author vitaliy
+ *
+ */
+public class CollisionBench {
+	
+	private long seed = 1;
+	private int states = 100;
+	private int rounds = 10;
+	private long millis = 200;
+	
+	// keeps the JIT from dropping the work
+	private long sink = 0;
+	
+	public static void main(String[] args) {
+		CollisionBench b = new CollisionBench();
+		b.parse(args);
+		b.run();
+	}
+	
+	private void parse(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String v = args[i + 1];
+			switch(args[i]) {
+			case "-seed":   seed = Long.parseLong(v); break;
+			case "-states": states = Integer.parseInt(v); break;
+			case "-rounds": rounds = Integer.parseInt(v); break;
+			case "-millis": millis = Long.parseLong(v); break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+	
+	public void run() {
+		FroggerWorld.initHeadless();
+		FroggerWorld w = new FroggerWorld(false, seed);
+		Frogger frog = w.getFrog();
+		AbstractBodyLayer<MovingEntity> l = w.getMovingObjectsLayer();
+		WorldLayout layout = w.getLayout();
+		CollisionSearch spheres = new SphereScan(frog);
+		CollisionSearch pixels = new PixelCollision(frog);
+		
+		// Every cell but the bottom one and the one out of the world at the top
+		int cols = layout.getColumns();
+		int rows = layout.getRows() - 1;
+		Vector2D[] cells = new Vector2D[cols * rows];
+		for (int r = 0; r < rows; r++)
+			for (int c = 0; c < cols; c++)
+				cells[r * cols + c] = new Vector2D(c * 32, (r + 1) * 32);
+		
+		long both = 0, sphereOnly = 0, pixelOnly = 0, other = 0;
+		for (int s = 0; s < states; s++) {
+			for (int t = 0; t < 10; t++)
+				w.cycleTraffic(16);
+			for (Vector2D p : cells) {
+				place(frog, p);
+				boolean a = spheres.find(l);
+				boolean b = pixels.find(l);
+				if (a && b) {
+					both++;
+					if (spheres.getHit() != pixels.getHit())
+						other++;
+				}
+				else if (a)
+					sphereOnly++;
+				else if (b)
+					pixelOnly++;
+			}
+		}
+		
+		System.out.printf("%d columns, %d entities, %d states of %d cells%n", 
+				cols, l.size(), states, cells.length);
+		System.out.printf("Contacts: %d both (%d on another entity), %d spheres only, %d pixels only%n",
+				both, other, sphereOnly, pixelOnly);
+		
+		double sphereNs = Double.MAX_VALUE, pixelNs = Double.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			double a = time(spheres, frog, l, cells);
+			double b = time(pixels, frog, l, cells);
+			if (round >= rounds / 2) {
+				sphereNs = Math.min(sphereNs, a);
+				pixelNs = Math.min(pixelNs, b);
+			}
+		}
+		System.out.printf("%12s %12s %8s%n", "spheres ns", "pixels ns", "speedup");
+		System.out.printf("%12.1f %12.1f %8.2f%n", sphereNs, pixelNs, sphereNs / pixelNs);
+		if (sink == 42)
+			System.out.println();
+	}
+	
+	private void place(Frogger frog, Vector2D p) {
+		frog.setPosition(p);
+		frog.sync(p);
+	}
+	
+	/**
+	 * @return - nanoseconds per search
+	 */
+	private double time(CollisionSearch search, Frogger frog, 
+			AbstractBodyLayer<MovingEntity> l, Vector2D[] cells) {
+		long calls = 0;
+		long t0 = System.nanoTime();
+		long end = t0 + millis * 1000000L;
+		long t;
+		do {
+			for (Vector2D p : cells) {
+				place(frog, p);
+				if (search.find(l))
+					sink += search.getHitSphere() + 1;
+			}
+			calls += cells.length;
+		} while ((t = System.nanoTime()) < end);
+		return (double) (t - t0) / calls;
+	}
+}
\ No newline at end of file
@@ -24,41 +24,35 @@
  */
 
 package frogger;
-import java.util.logging.Logger;
 
-import jig.engine.physics.vpe.VanillaSphere;
-import jig.engine.util.Vector2D;
+import jig.engine.physics.AbstractBodyLayer;
 
-
-public class CollisionObject extends VanillaSphere {
-	
-	Logger logger = Logger.getLogger(getClass().getName());
-
-	public CollisionObject(Vector2D pos) {
-		super("col");
-		setPosition(pos);
-	}
+/**
+ * Search of the first lane entity that touches the frog
+ * 
+ * FroggerCollisionDetection asks it once per tick and then applies the
+ * game rules to whatever was hit. Implementations agree on "first" as the 
+ * lowest layer index, and on the part of the entity that was touched as
+ * its collision sphere index, which is what tells a crocodile head from 
+ * its back.
+ * 
+ * @author vitaliy
+ *
+ */
+interface CollisionSearch {
 	
-	public CollisionObject(String name, Vector2D pos) {
-		super(name);
-		setPosition(pos);
-	}
+	/**
+	 * @return - true when an entity of l touches the frog, see getHit()
+	 */
+	boolean find(AbstractBodyLayer<MovingEntity> l);
 	
 	/**
-	 * Depending on the collision sphere, we offset it's position so
-	 * that it appears in the middle of the object
+	 * @return - entity found by the last find()
 	 */
-	public void setPosition(Vector2D pos) {
-		double dX = 16 - getRadius();
-		double dY = -getRadius() +16;
-		position = new Vector2D(pos.getX()+dX, pos.getY()+dY);
-	}
+	MovingEntity getHit();
 	
-	public void update(long deltaMs) {
-		try {
-	        throw new UnsupportedOperationException("Invalid operation for sorted list.");
-	    } catch (java.lang.UnsupportedOperationException e) {
-	        logger.info("–");
-	    }
-	}
+	/**
+	 * @return - part of getHit() that was touched
+	 */
+	int getHitSphere();
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+/**
+ * Collision spheres of one kind of entity, shared by all entities of that kind
+ * 
+ * Sphere i sits at a fixed offset from the entity position, its centre is
+ * only worked out when a collision query asks for it. Spheres are one tile
+ * apart along the entity, each in the middle of its tile. The centre is
+ * offset + inset + radius, added in that order, which gives bit for bit the
+ * centres the old per entity sphere objects had.
+ * 
+ * @author vitaliy
+ *
+ */
+public final class CollisionShape {
+	
+	// Spheres that fit a 30x30 and a 4x4 pixel box
+	static final double LARGE = 15;
+	static final double SMALL = 2;
+	
+	public static final CollisionShape NONE      = new CollisionShape(0, LARGE);
+	public static final CollisionShape FROG      = new CollisionShape(1, LARGE);
+	public static final CollisionShape CAR       = new CollisionShape(1, LARGE);
+	public static final CollisionShape TRUCK     = new CollisionShape(2, LARGE);
+	public static final CollisionShape GOAL      = new CollisionShape(1, SMALL);
+	public static final CollisionShape SHORTLOG  = new CollisionShape(3, SMALL);
+	public static final CollisionShape TURTLES   = new CollisionShape(3, SMALL);
+	public static final CollisionShape LONGLOG   = new CollisionShape(4, SMALL);
+	public static final CollisionShape CROCODILE = new CollisionShape(4, SMALL);
+	
+	private final double[] dx;
+	private final double inset;
+	private final double radius;
+	
+	private CollisionShape(int spheres, double r) {
+		dx = new double[spheres];
+		for (int i = 0; i < spheres; i++)
+			dx[i] = MovingEntity.STEP_SIZE*i;
+		inset = 16 - r;
+		radius = r;
+	}
+	
+	public int size() {
+		return dx.length;
+	}
+	
+	/**
+	 * @return - x offset of the tile of sphere i from the entity position
+	 */
+	public double getOffsetX(int i) {
+		return dx[i];
+	}
+	
+	/**
+	 * @return - distance from the tile corner to the sphere's bounding box
+	 */
+	public double getInset(int i) {
+		return inset;
+	}
+	
+	public double getRadius(int i) {
+		return radius;
+	}
+	
+	/**
+	 * @return - radius of the largest sphere
+	 */
+	public double getMaxRadius() {
+		return radius;
+	}
+}
\ No newline at end of file
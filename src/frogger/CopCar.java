@@ -30,9 +30,8 @@ import jig.engine.util.Vector2D;
 public class CopCar extends MovingEntity {
 	
 	public CopCar (Vector2D pos, Vector2D v) {
-		super(Main.SPRITE_SHEET + "#copcar");
+		super(SpriteKind.COPCAR);
 		position = pos;
-		collisionObjects.add(new CollisionObject(position));
 		velocity = v;
 		if (v.getX() < 0)
 			setFrame(1);
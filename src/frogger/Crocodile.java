@@ -24,57 +24,87 @@
  */
 
 package frogger;
+import java.nio.ByteBuffer;
+
 import jig.engine.util.Vector2D;
   
 public class Crocodile extends MovingEntity {
 
 	public static final int LENGTH = 32*3;
-	public static final String COLSMALL = "colSmall";
 	
 	private long animationDelay = 300;
-	private long animationTime = 0;
+	// Traffic time of the next frame, -1 until scheduled
+	private long frameMs = -1;
 	private int startFrame = 0;
 	private int nextFrame = 0;
 	
-	protected CollisionObject head;
+	// Collision sphere of the head, the front sphere in the direction of travel
+	protected int head;
 	
 	public Crocodile (Vector2D pos, Vector2D v) {
-		super(Main.SPRITE_SHEET + "#crocodile");
+		super(SpriteKind.CROCODILE);
 		position = pos;
-		Vector2D posSphere1 = position;
-		Vector2D posSphere2 = new Vector2D(position.getX()+32*1, position.getY());
-		Vector2D posSphere3 = new Vector2D(position.getX()+32*2, position.getY());
-		Vector2D posSphere4 = new Vector2D(position.getX()+32*3, position.getY());
-		collisionObjects.add(new CollisionObject(COLSMALL,posSphere1));
-		collisionObjects.add(new CollisionObject(COLSMALL,posSphere2));
-		collisionObjects.add(new CollisionObject(COLSMALL,posSphere3));
-		collisionObjects.add(new CollisionObject(COLSMALL,posSphere4));
 		velocity = v;
 		
 		if (v.getX() < 0) {
 			startFrame = 2;
-			head = collisionObjects.get(0);
+			head = 0;
 		}
 		else {
 			startFrame = 0;
-			head = collisionObjects.get(3);
+			head = 3;
 		}
 		
 		setFrame(startFrame);
 	}
 	
-	public void animate(long deltaMs) {
-		animationTime += deltaMs;
-		if (animationTime > animationDelay) {
-			animationTime = 0;
+	private final Scheduler.Task animate = new Scheduler.Task() {
+		public void run(Scheduler s) {
+			if (!isActive())
+				return;
 			nextFrame = (nextFrame+1)%2;
 			setFrame(nextFrame+startFrame);
+			frameMs = s.now() + animationDelay;
+			s.at(frameMs, this);
 		}
+	};
+	
+	/**
+	 * Put the jaw animation on the traffic time line
+	 */
+	@Override
+	public void schedule(Scheduler s) {
+		if (!isActive())
+			return;
+		
+		if (frameMs < 0)
+			frameMs = s.now() + animationDelay;
+		s.at(frameMs, animate);
 	}
 
 	@Override
-	public void update(final long deltaMs) {
-		super.update(deltaMs);
-	    animate(deltaMs);
+	public void saveState(ByteBuffer b) {
+		super.saveState(b);
+		b.putLong(frameMs);
+		b.putInt(nextFrame);
+	}
+	
+	/**
+	 * Head and start frame follow from the direction of travel
+	 */
+	@Override
+	public void restoreState(ByteBuffer b) {
+		super.restoreState(b);
+		frameMs = b.getLong();
+		nextFrame = b.getInt();
+		
+		if (velocity.getX() < 0) {
+			startFrame = 2;
+			head = 0;
+		}
+		else {
+			startFrame = 0;
+			head = 3;
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.Arrays;
+import java.util.List;
+
+import jig.engine.physics.AbstractBodyLayer;
+
+/**
+ * Collision of a crowd of frogs against the lane entities in one pass
+ * 
+ * The collision spheres of all active entities are binned into a grid of
+ * tile sized cells, then every frog only tests the spheres in the cells
+ * around it. Filling the grid is O(M) and the frogs are O(N), instead of
+ * testing every frog against every entity.
+ * 
+ * The bins are kept sorted by cell in flat arrays, so the cells a frog 
+ * covers in one row are a single span that the SphereKernel tests at once.
+ * 
+ * Frogs are handled in order with the same rules as 
+ * FroggerCollisionDetection.testCollision(): out of bounds first, then the
+ * first touching sphere in layer order, drowning in the river otherwise.
+ * 
+ * @author vitaliy
+ *
+ */
+class CrowdCollision {
+	
+	// entities spawn and despawn this many tiles outside the world
+	private static final int MARGIN = 8;
+	
+	private final int gridCols;
+	private final int gridRows;
+	private final SphereKernel kernel;
+	
+	// spheres of cell c are [start[c], start[c + 1]) of the sorted arrays
+	private final int[] start;
+	private final int[] cursor;
+	
+	// Spheres in layer order: entity, its sphere index and cell
+	private MovingEntity[] owners = new MovingEntity[1024];
+	private int[] index = new int[1024];
+	private int[] cellOf = new int[1024];
+	
+	// Spheres sorted by cell: centre, radius and number in layer order
+	private double[] x = new double[1024];
+	private double[] y = new double[1024];
+	private double[] radius = new double[1024];
+	private double[] key = new double[1024];
+	private double maxRadius;
+	
+	CrowdCollision(WorldLayout layout) {
+		this(layout, SphereKernel.load());
+	}
+	
+	CrowdCollision(WorldLayout layout, SphereKernel k) {
+		gridCols = layout.getColumns() + 2 * MARGIN;
+		gridRows = layout.getRows();
+		kernel = k;
+		start = new int[gridCols * gridRows + 1];
+		cursor = new int[gridCols * gridRows];
+	}
+	
+	public void testCollision(List<FroggerCollisionDetection> frogs, AbstractBodyLayer<MovingEntity> l) {
+		fill(l);
+		
+		for (int i = 0; i < frogs.size(); i++) {
+			FroggerCollisionDetection c = frogs.get(i);
+			if (!c.getFrog().isAlive())
+				continue;
+			
+			if (c.isOutOfBounds()) {
+				c.getFrog().die(TelemetrySink.CAUSE_OUT_OF_BOUNDS);
+				continue;
+			}
+			
+			int hit = first(c);
+			if (hit >= 0)
+				c.collide(owners[hit], index[hit]);
+			else if (c.isInRiver())
+				c.getFrog().die(TelemetrySink.CAUSE_DROWNED);
+		}
+	}
+	
+	/**
+	 * Bin every sphere, sphere numbers follow layer order
+	 */
+	private void fill(AbstractBodyLayer<MovingEntity> l) {
+		Arrays.fill(start, 0);
+		maxRadius = 0;
+		
+		int n = 0;
+		for (int i = 0; i < l.size(); i++) {
+			MovingEntity m = l.get(i);
+			if (!m.isActive())
+				continue;
+			
+			CollisionShape shape = m.getShape();
+			for (int s = 0; s < shape.size(); s++) {
+				if (n == owners.length)
+					grow();
+				
+				owners[n] = m;
+				index[n] = s;
+				cellOf[n] = cell(col(m.getSphereX(s)), row(m.getSphereY(s)));
+				start[cellOf[n] + 1]++;
+				maxRadius = Math.max(maxRadius, shape.getRadius(s));
+				n++;
+			}
+		}
+		
+		// counting sort, spheres of a cell stay in layer order
+		for (int c = 0; c < cursor.length; c++) {
+			start[c + 1] += start[c];
+			cursor[c] = start[c];
+		}
+		for (int i = 0; i < n; i++) {
+			int p = cursor[cellOf[i]]++;
+			x[p] = owners[i].getSphereX(index[i]);
+			y[p] = owners[i].getSphereY(index[i]);
+			radius[p] = owners[i].getShape().getRadius(index[i]);
+			key[p] = i;
+		}
+	}
+	
+	/**
+	 * @return - lowest numbered sphere touching the frog, -1 for none
+	 */
+	private int first(FroggerCollisionDetection frog) {
+		double fx = frog.getFrogX();
+		double fy = frog.getFrogY();
+		double r = frog.getFrogRadius();
+		double reach = r + maxRadius;
+		
+		int c0 = col(fx - reach);
+		int c1 = col(fx + reach);
+		int r0 = row(fy - reach);
+		int r1 = row(fy + reach);
+		
+		int best = -1;
+		for (int cy = r0; cy <= r1; cy++) {
+			int from = start[cell(c0, cy)];
+			int to = start[cell(c1, cy) + 1];
+			if (from == to)
+				continue;
+			int k = kernel.firstKey(fx, fy, r, x, y, radius, key, from, to);
+			if (k >= 0 && (best < 0 || k < best))
+				best = k;
+		}
+		return best;
+	}
+	
+	private int col(double px) {
+		return Math.max(0, Math.min(gridCols - 1, (int) Math.floor(px / WorldLayout.TILE) + MARGIN));
+	}
+	
+	private int row(double py) {
+		return Math.max(0, Math.min(gridRows - 1, (int) Math.floor(py / WorldLayout.TILE)));
+	}
+	
+	private int cell(int col, int row) {
+		return row * gridCols + col;
+	}
+	
+	private void grow() {
+		int n = owners.length * 2;
+		owners = Arrays.copyOf(owners, n);
+		index = Arrays.copyOf(index, n);
+		cellOf = Arrays.copyOf(cellOf, n);
+		x = Arrays.copyOf(x, n);
+		y = Arrays.copyOf(y, n);
+		radius = Arrays.copyOf(radius, n);
+		key = Arrays.copyOf(key, n);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,375 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import jig.engine.RenderingContext;
+
+/**
+ * Records gameplay by rendering frames offscreen at a fixed rate
+ * 
+ * capture() renders the scene a second time into a pooled BufferedImage,
+ * by pointing the J2D rendering context at the image's graphics for the
+ * duration of the call. Frames go through a bounded queue to a pool of
+ * encoder threads and the images return to the pool once encoded. When the
+ * pool is empty the frame is dropped, the game thread never waits.
+ * 
+ * Frames are written either as a PNG sequence or as one .frcv file:
+ * 
+ *   header   MAGIC(4) VERSION(4) width(4) height(4) fps(4)
+ *   frame    index(4) gameTimeMs(8) length(4) deflated RGB pixels(length)
+ * 
+ * Every .frcv frame is compressed on its own, main() exports them to PNG.
+ * 
+ * @author vitaliy
+ *
+ */
+public class FrameCapture implements Closeable {
+	
+	static final int MAGIC   = 0x46524356; // "FRCV"
+	static final int VERSION = 1;
+	
+	static final int DEFAULT_FPS = 30;
+	static final int QUEUE_FRAMES = 16;
+	
+	public enum Format { PNG, FRCV }
+	
+	/**
+	 * What gets captured, usually the same code that renders the screen
+	 */
+	public interface Scene {
+		void render(RenderingContext rc);
+	}
+	
+	/**
+	 * A recycled frame buffer
+	 */
+	private static final class Frame {
+		final BufferedImage image;
+		final Graphics2D graphics;
+		int index;
+		long timeMs;
+		
+		Frame(int w, int h) {
+			image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			graphics = image.createGraphics();
+		}
+	}
+	
+	private static final Frame POISON = new Frame(1, 1);
+	
+	Logger logger = Logger.getLogger(getClass().getName());
+	
+	private final Path dir;
+	private final Format format;
+	private final int width, height, fps;
+	private final long intervalMs;
+	
+	private final ArrayBlockingQueue<Frame> free;
+	private final ArrayBlockingQueue<Frame> queue;
+	private final Thread[] workers;
+	
+	// .frcv frames finish out of order, they are written in index order
+	private final FileChannel video;
+	private final Map<Integer, ByteBuffer> finished = new HashMap<Integer, ByteBuffer>();
+	private int nextToWrite = 0;
+	
+	private Field graphicsField = null;
+	private long clockMs = 0;
+	private long nextCaptureMs = 0;
+	private int captured = 0;
+	private volatile long dropped = 0;
+	
+	public FrameCapture(Path directory, Format f, int w, int h, int framesPerSecond, 
+			int threads) throws IOException {
+		dir = directory;
+		format = f;
+		width = w;
+		height = h;
+		fps = framesPerSecond;
+		intervalMs = 1000 / fps;
+		
+		Files.createDirectories(dir);
+		if (format == Format.FRCV) {
+			video = FileChannel.open(dir.resolve("capture.frcv"), StandardOpenOption.CREATE, 
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			ByteBuffer header = ByteBuffer.allocate(20);
+			header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(fps);
+			header.flip();
+			while (header.hasRemaining())
+				video.write(header);
+		} else
+			video = null;
+		
+		// room for every frame plus the workers' POISON, so add() never fails
+		queue = new ArrayBlockingQueue<Frame>(QUEUE_FRAMES + 2 * threads);
+		free = new ArrayBlockingQueue<Frame>(QUEUE_FRAMES + threads);
+		for (int i = 0; i < QUEUE_FRAMES + threads; i++)
+			free.add(new Frame(width, height));
+		
+		workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					encodeLoop();
+				}
+			}, "frame-encoder-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+	
+	/**
+	 * Advance the capture clock, in game time so that recordings play back
+	 * at the speed the game ran
+	 */
+	public void update(long deltaMs) {
+		clockMs += deltaMs;
+	}
+	
+	/**
+	 * Render the scene into a frame if one is due
+	 * 
+	 * @param rc - the screen's rendering context, borrowed for the capture
+	 */
+	public void capture(RenderingContext rc, Scene scene) {
+		if (clockMs < nextCaptureMs)
+			return;
+		nextCaptureMs = Math.max(nextCaptureMs + intervalMs, clockMs - intervalMs);
+		
+		Field g = graphicsField(rc);
+		if (g == null)
+			return;
+		
+		Frame f = free.poll();
+		if (f == null) {
+			dropped++;
+			return;
+		}
+		
+		try {
+			Object screen = g.get(rc);
+			g.set(rc, f.graphics);
+			try {
+				f.graphics.setTransform(new AffineTransform());
+				scene.render(rc);
+			} finally {
+				g.set(rc, screen);
+			}
+		} catch (IllegalAccessException e) {
+			graphicsField = null;
+			free.add(f);
+			return;
+		}
+		
+		f.index = captured++;
+		f.timeMs = clockMs;
+		queue.add(f);
+	}
+	
+	/**
+	 * The Graphics2D the rendering context draws on, null if it has none
+	 */
+	private Field graphicsField(RenderingContext rc) {
+		if (graphicsField != null && graphicsField.getDeclaringClass() == rc.getClass())
+			return graphicsField;
+		
+		graphicsField = null;
+		for (Field f : rc.getClass().getDeclaredFields()) {
+			if (Graphics2D.class.isAssignableFrom(f.getType())) {
+				f.setAccessible(true);
+				graphicsField = f;
+			}
+		}
+		if (graphicsField == null)
+			logger.warning("Can't capture from " + rc.getClass().getName());
+		return graphicsField;
+	}
+	
+	private void encodeLoop() {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		byte[] rgb = new byte[width * height * 3];
+		byte[] out = new byte[rgb.length + rgb.length / 100 + 64];
+		
+		while (true) {
+			Frame f;
+			try {
+				f = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (f == POISON)
+				return;
+			
+			try {
+				if (format == Format.PNG) {
+					try {
+						ImageIO.write(f.image, "png", 
+								dir.resolve(String.format("frame-%06d.png", f.index)).toFile());
+					} finally {
+						free.add(f);
+					}
+					continue;
+				}
+				
+				int[] pixels = ((DataBufferInt) f.image.getRaster().getDataBuffer()).getData();
+				for (int i = 0, j = 0; i < pixels.length; i++) {
+					int p = pixels[i];
+					rgb[j++] = (byte) (p >> 16);
+					rgb[j++] = (byte) (p >> 8);
+					rgb[j++] = (byte) p;
+				}
+				int index = f.index;
+				long timeMs = f.timeMs;
+				free.add(f);
+				
+				deflater.reset();
+				deflater.setInput(rgb);
+				deflater.finish();
+				int n = deflater.deflate(out);
+				
+				ByteBuffer b = ByteBuffer.allocate(16 + n);
+				b.putInt(index).putLong(timeMs).putInt(n).put(out, 0, n);
+				b.flip();
+				writeInOrder(index, b);
+			} catch (IOException e) {
+				logger.warning("Frame " + f.index + " lost: " + e);
+			}
+		}
+	}
+	
+	private synchronized void writeInOrder(int index, ByteBuffer b) throws IOException {
+		finished.put(index, b);
+		ByteBuffer next;
+		while ((next = finished.remove(nextToWrite)) != null) {
+			while (next.hasRemaining())
+				video.write(next);
+			nextToWrite++;
+		}
+	}
+	
+	public int getFps() {
+		return fps;
+	}
+	
+	public int getCaptured() {
+		return captured;
+	}
+	
+	public long getDropped() {
+		return dropped;
+	}
+	
+	/**
+	 * Encode what is queued and stop the workers
+	 */
+	public void close() throws IOException {
+		for (int i = 0; i < workers.length; i++) {
+			try {
+				queue.put(POISON);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (Thread t : workers) {
+			try {
+				t.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (video != null)
+			video.close();
+	}
+	
+	/**
+	 * Export a .frcv recording to a PNG sequence
+	 * 
+	 * Usage: FrameCapture capture.frcv outputDir
+	 */
+	public static void main(String[] args) throws IOException, DataFormatException {
+		Path out = Paths.get(args[1]);
+		Files.createDirectories(out);
+		
+		try (InputStream s = Files.newInputStream(Paths.get(args[0]))) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a capture file: " + args[0]);
+			int w = in.readInt();
+			int h = in.readInt();
+			int fps = in.readInt();
+			
+			BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			byte[] rgb = new byte[w * h * 3];
+			Inflater inflater = new Inflater();
+			int frames = 0;
+			
+			while (in.available() > 0) {
+				int index = in.readInt();
+				in.readLong();
+				byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+				
+				inflater.reset();
+				inflater.setInput(data);
+				inflater.inflate(rgb);
+				for (int i = 0, j = 0; i < pixels.length; i++, j += 3)
+					pixels[i] = (rgb[j] & 0xFF) << 16 | (rgb[j + 1] & 0xFF) << 8 | (rgb[j + 2] & 0xFF);
+				
+				ImageIO.write(image, "png", out.resolve(String.format("frame-%06d.png", index)).toFile());
+				frames++;
+			}
+			System.out.println(frames + " frames, " + w + "x" + h + " at " + fps + " fps");
+		}
+	}
+}
\ No newline at end of file
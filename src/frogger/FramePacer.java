@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed rate frame pacing for the game loop
+ * 
+ * await() returns at the next frame deadline: it parks the thread until 
+ * spinNanos before the deadline, since parking wakes up too late by a 
+ * varying fraction of a millisecond, and spins the rest of the way. The 
+ * spin is all the CPU a waiting frame burns, 0 parks all the way.
+ * 
+ * A frame that starts more than LATE_NANOS after its deadline is late, each
+ * whole frame period it is behind is a missed deadline. How missed frames
+ * are caught up is the CatchUp policy. The wake up error of every frame goes
+ * into a LatencyHistogram.
+ * 
+ * Settings come from -Dfrogger.fps (60), -Dfrogger.catchup=skip|burst
+ * (skip), -Dfrogger.spinUs (500) and -Dfrogger.maxBurst (4).
+ * 
+ * @author vitaliy
+ *
+ */
+public class FramePacer {
+	
+	/**
+	 * What to do about missed deadlines
+	 */
+	public enum CatchUp {
+		/** Drop them, game time runs slow for a moment and the frame rate stays even */
+		SKIP,
+		/** Run up to maxBurst ticks back to back in one frame, game time keeps up */
+		BURST
+	}
+	
+	static final long LATE_NANOS = 1000000L;
+	
+	private int fps;
+	private long frameNanos;
+	private final CatchUp catchUp;
+	private final long spinNanos;
+	private final int maxBurst;
+	
+	private long deadline;
+	private long carryNanos = 0;
+	
+	private long frames = 0;
+	private long late = 0;
+	private long missed = 0;
+	private final LatencyHistogram wakeError = new LatencyHistogram();
+	
+	/**
+	 * @param fps - frames per second
+	 * @param c - catch up policy
+	 * @param spinNanos - how long before a deadline to stop parking and spin
+	 * @param maxBurst - most ticks in one frame when catching up in bursts
+	 */
+	public FramePacer(int fps, CatchUp c, long spinNanos, int maxBurst) {
+		if (fps <= 0 || maxBurst <= 0)
+			throw new IllegalArgumentException("Bad frame rate " + fps + " or burst " + maxBurst);
+		this.fps = fps;
+		frameNanos = 1000000000L / fps;
+		catchUp = c;
+		this.spinNanos = Math.max(0, spinNanos);
+		this.maxBurst = maxBurst;
+		start();
+	}
+	
+	/**
+	 * @return - a pacer set up from the system properties
+	 */
+	public static FramePacer fromProperties() {
+		return new FramePacer(
+				Integer.getInteger("frogger.fps", 60),
+				CatchUp.valueOf(System.getProperty("frogger.catchup", "skip").toUpperCase()),
+				Long.getLong("frogger.spinUs", 500) * 1000,
+				Integer.getInteger("frogger.maxBurst", 4));
+	}
+	
+	/**
+	 * The first deadline is one frame from now
+	 */
+	public void start() {
+		deadline = System.nanoTime() + frameNanos;
+	}
+	
+	/**
+	 * Change the frame rate, the next deadline is one new frame from now
+	 */
+	public void setFps(int fps) {
+		if (fps == this.fps)
+			return;
+		if (fps <= 0)
+			throw new IllegalArgumentException("Bad frame rate " + fps);
+		this.fps = fps;
+		frameNanos = 1000000000L / fps;
+		start();
+	}
+	
+	/**
+	 * Wait for the next frame deadline
+	 * 
+	 * @return - number of game ticks to run this frame, each with nextDeltaMs()
+	 */
+	public int await() {
+		long now = System.nanoTime();
+		while (deadline - now > spinNanos) {
+			LockSupport.parkNanos(deadline - now - spinNanos);
+			now = System.nanoTime();
+		}
+		while (deadline - now > 0) {
+			Thread.onSpinWait();
+			now = System.nanoTime();
+		}
+		
+		long error = now - deadline;
+		wakeError.record(error);
+		frames++;
+		if (error > LATE_NANOS)
+			late++;
+		
+		int ticks = 1;
+		long behind = error / frameNanos;
+		if (behind > 0) {
+			missed += behind;
+			if (catchUp == CatchUp.BURST)
+				ticks += (int) Math.min(behind, maxBurst - 1);
+			// whatever is not caught up is dropped, the deadlines stay on the grid
+			deadline += behind * frameNanos;
+		}
+		deadline += frameNanos;
+		return ticks;
+	}
+	
+	/**
+	 * @return - deltaMs of the next tick, whole milliseconds that add up to
+	 * the frame period over time
+	 */
+	public long nextDeltaMs() {
+		carryNanos += frameNanos;
+		long ms = carryNanos / 1000000L;
+		carryNanos -= ms * 1000000L;
+		return ms;
+	}
+	
+	public int getFps() {
+		return fps;
+	}
+	
+	public long getFrameNanos() {
+		return frameNanos;
+	}
+	
+	public CatchUp getCatchUp() {
+		return catchUp;
+	}
+	
+	public long getFrames() {
+		return frames;
+	}
+	
+	/**
+	 * @return - frames that started more than LATE_NANOS after their deadline
+	 */
+	public long getLate() {
+		return late;
+	}
+	
+	/**
+	 * @return - deadlines that passed without a frame
+	 */
+	public long getMissed() {
+		return missed;
+	}
+	
+	/**
+	 * @return - nanoseconds from each deadline to the frame actually starting
+	 */
+	public LatencyHistogram getWakeError() {
+		return wakeError;
+	}
+}
\ No newline at end of file
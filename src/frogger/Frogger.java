@@ -25,6 +25,8 @@
 
 package frogger;
 
+import java.nio.ByteBuffer;
+
 import jig.engine.util.Vector2D;
 
 /**
@@ -58,20 +60,86 @@ public class Frogger extends MovingEntity {
     private int currentFrame = 0;
     private int tmpFrame = 0;
     
-    private int deltaTime = 0;
+    // Play time the level timer ticks next, and seconds it has yet to tick
+    private long secondMs;
+    private int seconds = 0;
     
     private boolean cheating = false;
     
     private boolean hwHasMoved = false;
     
+    // Game time in milliseconds, advanced by update()
+    private long clockMs = 0;
+    
+    // Every frog in a crowd plays for itself
+    private int lives = Main.FROGGER_LIVES;
+    private int score = 0;
+    private int levelTimer = Main.DEFAULT_LEVEL_TIME;
+    
+    // Key press handling, see input()
+    private boolean keyPressed = false;
+    private boolean listenInput = true;
+    
+    // Key events, see press(): one press kept during a jump, and the stamp
+    // of the press behind the latest move
+    private int bufferedKeys = 0;
+    private long bufferedStamp = 0;
+    private long moveStamp = 0;
+    
+    private final FroggerWorld world;
+    
+    // The collision sphere is not tied to the sprite, see sync()
+    private Vector2D anchor;
+    
+    // Bumped whenever the sphere leaves its straight line, see getTrajectory()
+    private int trajectory = 0;
+    
+    // Counts the seconds in play time, update() takes them off the level timer
+    private final Scheduler.Task second = new Scheduler.Task() {
+    	public void run(Scheduler s) {
+    		if (lives > 0)
+    			seconds++;
+    		secondMs = s.now() + 1000;
+    		s.at(secondMs, this);
+    	}
+    };
+    
     
     /**
      * Build frogger!
      */
-	public Frogger (Main g) {
-		super(Main.SPRITE_SHEET + "#frog");
+	public Frogger (FroggerWorld w) {
+		super(SpriteKind.FROG);
+		world = w;
 		resetFrog();
-		collisionObjects.add(new CollisionObject(position));
+		anchor = position;
+		secondMs = world.getPlayTime().now() + 1000;
+		world.getPlayTime().at(secondMs, second);
+	}
+	
+	/**
+	 * Move the collision sphere to p
+	 * 
+	 * While jumping it waits at the landing spot, and while following a log
+	 * it trails the sprite by one update
+	 */
+	public void sync(Vector2D p) {
+		anchor = p;
+	}
+	
+	@Override
+	public Vector2D getCollisionAnchor() {
+		return anchor;
+	}
+	
+	/**
+	 * The collision sphere stands still or moves with what the frog follows,
+	 * this number changes whenever it jumps off that line
+	 * 
+	 * Used by KineticCollision to know when its predictions are void
+	 */
+	public int getTrajectory() {
+		return trajectory;
 	}
 	
 	/**
@@ -82,8 +150,94 @@ public class Frogger extends MovingEntity {
 		setAnimating(false);
 		currentFrame = 0;
 		followObject = null;
-		position = Main.getFroggerStart();
-		Main.setLevelTimer(Main.DEFAULT_LEVEL_TIME);
+		trajectory++;
+		position = world.getLayout().getFroggerStart();
+		levelTimer = Main.DEFAULT_LEVEL_TIME;
+		bufferedKeys = 0;
+	}
+	
+	/**
+	 * Handling Frogger movement from a mask of pressed arrow keys
+	 * 
+	 * It registers a key press, and ignores all other key strokes
+	 * until the first key has been released
+	 * 
+	 * @param keys - FroggerWorld.KEY_UP, KEY_DOWN, KEY_LEFT, KEY_RIGHT or'ed together
+	 */
+	public void input(int keys) {
+		boolean keyReleased = false;
+		
+		if (keys != 0)
+			keyPressed = true;
+		else if (keyPressed)
+			keyReleased = true;
+		
+		if (listenInput) {
+		    if ((keys & FroggerWorld.KEY_DOWN) != 0) {
+		    	moveDown();
+		    }
+		    if ((keys & FroggerWorld.KEY_UP) != 0) {
+		    	moveUp();
+		    }
+		    if ((keys & FroggerWorld.KEY_LEFT) != 0) {
+		    	moveLeft();
+		    }
+	 	    if ((keys & FroggerWorld.KEY_RIGHT) != 0) {
+	 	    	moveRight();
+	 	    }
+	 	    
+	 	    if (keyPressed) {
+	 	    	listenInput = false;
+	 	    }
+		}
+		
+		if (keyReleased) {
+			listenInput = true;
+			keyPressed = false;
+		}
+	}
+	
+	/**
+	 * Handling Frogger movement from key events, instead of input()
+	 * 
+	 * A press moves right away, or right after the jump in progress when it
+	 * comes during one. Only one press is kept, a later one replaces it.
+	 * 
+	 * @param keys - the pressed key, FroggerWorld.KEY_*
+	 * @param stamp - System.nanoTime() of the key event, see takeMoveStamp()
+	 */
+	public void press(int keys, long stamp) {
+		if (isAnimating() && isAlive()) {
+			bufferedKeys = keys;
+			bufferedStamp = stamp;
+			return;
+		}
+		step(keys, stamp);
+	}
+	
+	private void step(int keys, long stamp) {
+		int before = trajectory;
+		if ((keys & FroggerWorld.KEY_DOWN) != 0)
+			moveDown();
+		if ((keys & FroggerWorld.KEY_UP) != 0)
+			moveUp();
+		if ((keys & FroggerWorld.KEY_LEFT) != 0)
+			moveLeft();
+		if ((keys & FroggerWorld.KEY_RIGHT) != 0)
+			moveRight();
+		
+		if (trajectory != before)
+			moveStamp = stamp;
+	}
+	
+	/**
+	 * @return - stamp of the press behind the move started since the last
+	 * call, 0 for none
+	 */
+	public long takeMoveStamp() {
+		long s = moveStamp;
+		moveStamp = 0;
+		return s;
 	}
 	
 	/**
@@ -93,16 +247,16 @@ public class Frogger extends MovingEntity {
 		if (getCenterPosition().getX()-16 > 0 && isAlive() && !isAnimating()) {
 			currentFrame = 3;
 		    move(new Vector2D(-1,0));
-		    AudioEfx.frogJump.play(0.2);
+		    AudioEfx.play(AudioEfx.frogJump, 0.2);
 		}
 	}
 	
 	public void moveRight() {
 		
-		if (getCenterPosition().getX()+32 < Main.WORLD_WIDTH && isAlive() && !isAnimating()) {
+		if (getCenterPosition().getX()+32 < world.getLayout().getWidth() && isAlive() && !isAnimating()) {
 			currentFrame = 2;
 		    move(new Vector2D(1,0));
-		    AudioEfx.frogJump.play(0.2);
+		    AudioEfx.play(AudioEfx.frogJump, 0.2);
 		}
 	}
 	
@@ -110,24 +264,25 @@ public class Frogger extends MovingEntity {
 		if (position.getY() > 32  && isAlive() && !isAnimating()) {
 			currentFrame = 0;
 		    move(new Vector2D(0,-2));
-		    AudioEfx.frogJump.play(0.2);
+		    AudioEfx.play(AudioEfx.frogJump, 0.2);
 		}
 	}
 	
 	public void moveDown() {
-		if (position.getY() < Main.WORLD_HEIGHT - MOVE_STEP && isAlive() && !isAnimating()) {
+		if (position.getY() < world.getLayout().getHeight() - MOVE_STEP && isAlive() && !isAnimating()) {
 			currentFrame = 1;
 		    move(new Vector2D(0,1));
-		    AudioEfx.frogJump.play(0.2);
+		    AudioEfx.play(AudioEfx.frogJump, 0.2);
 		}
 	}
 	
 	/**
-	 * Short-cut for systems current time
+	 * Short-cut for the game time, so that headless worlds can run faster
+	 * than the wall clock
 	 * @return
 	 */
 	public long getTime() {
-		return System.currentTimeMillis();
+		return clockMs;
 	}
 	
 	/**
@@ -141,6 +296,7 @@ public class Frogger extends MovingEntity {
 	 */
 	public void move(Vector2D dir) {
 		followObject = null;
+		trajectory++;
 		curAnimationFrame = 0;
 		finalAnimationFrame = MOVE_STEP/ANIMATION_STEP;
 		setAnimating(true);
@@ -149,6 +305,7 @@ public class Frogger extends MovingEntity {
 		dirAnimation = dir;
 
 		tmpFrame = currentFrame;
+		world.emit(this, TelemetrySink.JUMP, (short) currentFrame, score);
 		currentFrame += 5;
 		
 		// Move CollisionSphere to an already animated location
@@ -214,6 +371,8 @@ public class Frogger extends MovingEntity {
 	 * @param log
 	 */
 	public void follow(MovingEntity log) {
+		if (followObject != log)
+			trajectory++;
 		followObject = log;
 	}
 	
@@ -225,6 +384,7 @@ public class Frogger extends MovingEntity {
 	public void windReposition(Vector2D d) {
 		if (isAlive()) {
 			setHwHasMoved(true);
+			trajectory++;
 			setPosition(new Vector2D(getPosition().getX()+d.getX(), getPosition().getY()));
 			sync(position);
 		}
@@ -252,22 +412,25 @@ public class Frogger extends MovingEntity {
 	
     /**
      * Frogger dies
+     * @param cause - one of the TelemetrySink.CAUSE_ values
      */
-	public void die() {
+	public void die(short cause) {
 		if (isAnimating())
 			return;
 		
 		if (!isCheating()) {
-		    AudioEfx.frogDie.play(0.2);
+		    AudioEfx.play(AudioEfx.frogDie, 0.2);
 		    followObject = null;
+		    trajectory++;
 		    setAlive(false);
 		    currentFrame = 4;	// dead sprite   
-		    Main.setGameLives(Main.getGameLives() - 1);
+		    lives--;
 		    setHwHasMoved(true);
+		    world.emit(this, TelemetrySink.DEATH, cause, lives);
 		}
 		
 		timeOfDeath = getTime();
-		Main.setLevelTimer(Main.DEFAULT_LEVEL_TIME);
+		levelTimer = Main.DEFAULT_LEVEL_TIME;
 	}
 	
 	/**
@@ -275,59 +438,159 @@ public class Frogger extends MovingEntity {
 	 */
 	public void reach(final Goal g) {
 		if (!g.isReached) {
-			AudioEfx.frogGoal.play(0.4);
-			Main.setGameScore(Main.getGameScore() + 100);
-			Main.setGameScore(Main.getGameScore() + Main.getLevelTimer());
+			AudioEfx.play(AudioEfx.frogGoal, 0.4);
+			score += 100;
+			score += levelTimer;
+			world.emit(this, TelemetrySink.GOAL, (short) (g.getPosition().getX()/32), score);
 			if (g.isBonus) {
-				AudioEfx.bonus.play(0.2);
-				Main.setGameLives(Main.getGameLives() + 1);
+				AudioEfx.play(AudioEfx.bonus, 0.2);
+				lives++;
+				world.emit(this, TelemetrySink.BONUS, (short) (g.getPosition().getX()/32), lives);
 			}
 			g.reached();
 			resetFrog();
 		}
 		else {
+			trajectory++;
 			setPosition(g.getPosition());
 		}
 	}
 	
+	/**
+	 * Frogger snapshot also covers lives, score, timers, keys, heat wave flag
+	 * and the collision sphere
+	 * 
+	 * The follow object is an index into the world and is saved by WorldSnapshot
+	 */
+	@Override
+	public void saveState(ByteBuffer b) {
+		super.saveState(b);
+		b.putInt(curAnimationFrame);
+		b.putInt(finalAnimationFrame);
+		b.putLong(clockMs);
+		b.putLong(animationDelay);
+		b.putLong(animationBeginTime);
+		b.put((byte) (isAnimating ? 1 : 0));
+		b.putDouble(dirAnimation.getX());
+		b.putDouble(dirAnimation.getY());
+		b.put((byte) (isAlive ? 1 : 0));
+		b.putLong(timeOfDeath);
+		b.putInt(currentFrame);
+		b.putInt(tmpFrame);
+		b.putLong(secondMs);
+		b.putInt(seconds);
+		b.put((byte) (cheating ? 1 : 0));
+		b.put((byte) (hwHasMoved ? 1 : 0));
+		b.putInt(lives);
+		b.putInt(score);
+		b.putInt(levelTimer);
+		b.put((byte) (keyPressed ? 1 : 0));
+		b.put((byte) (listenInput ? 1 : 0));
+		b.putInt(bufferedKeys);
+		
+		// The sphere lags the sprite while following or drifting, keep it as is
+		b.putDouble(anchor.getX());
+		b.putDouble(anchor.getY());
+	}
+	
+	@Override
+	public void restoreState(ByteBuffer b) {
+		super.restoreState(b);
+		curAnimationFrame = b.getInt();
+		finalAnimationFrame = b.getInt();
+		clockMs = b.getLong();
+		animationDelay = b.getLong();
+		animationBeginTime = b.getLong();
+		isAnimating = b.get() != 0;
+		double dx = b.getDouble();
+		double dy = b.getDouble();
+		if (dirAnimation.getX() != dx || dirAnimation.getY() != dy)
+			dirAnimation = new Vector2D(dx, dy);
+		isAlive = b.get() != 0;
+		timeOfDeath = b.getLong();
+		currentFrame = b.getInt();
+		tmpFrame = b.getInt();
+		secondMs = b.getLong();
+		seconds = b.getInt();
+		world.getPlayTime().at(secondMs, second);
+		cheating = b.get() != 0;
+		hwHasMoved = b.get() != 0;
+		lives = b.getInt();
+		score = b.getInt();
+		levelTimer = b.getInt();
+		keyPressed = b.get() != 0;
+		listenInput = b.get() != 0;
+		bufferedKeys = b.getInt();
+		anchor = new Vector2D(b.getDouble(), b.getDouble());
+		followObject = null;
+		trajectory++;
+	}
+	
 	@Override
 	public void update(final long deltaMs) {
-		if (Main.getGameLives() <= 0)
+		if (lives <= 0)
 			return;
 		
+		clockMs += deltaMs;
+		
 		// if dead, stay dead for 2 seconds.
-		if (!isAlive() && timeOfDeath + 2000 < System.currentTimeMillis())
+		if (!isAlive() && timeOfDeath + 2000 < getTime())
 				resetFrog();
 		
-		updateAnimation();	
+		updateAnimation();
+		
+		// a press that came during the jump goes right after it
+		if (bufferedKeys != 0 && !isAnimating()) {
+			int keys = bufferedKeys;
+			bufferedKeys = 0;
+			step(keys, bufferedStamp);
+		}
+		
 		updateFollow(deltaMs);
 		setFrame(currentFrame);
 		
 		// Level timer stuff
-		setDeltaTime(getDeltaTime() + (int)deltaMs);
-		if (getDeltaTime() > 1000) {
-			setDeltaTime(0);
-			Main.setLevelTimer(Main.getLevelTimer() - 1);
-		}
+		levelTimer -= seconds;
+		seconds = 0;
 		
-		if (Main.getLevelTimer() <= 0)
-			die();
+		if (levelTimer <= 0)
+			die(TelemetrySink.CAUSE_TIMEOUT);
 	}
 
-	public boolean isAlive() {
-		return isAlive;
+	public MovingEntity getFollowObject() {
+		return followObject;
 	}
 
-	public void setAlive(boolean isAlive) {
-		this.isAlive = isAlive;
+	public int getLives() {
+		return lives;
+	}
+
+	public void setLives(int lives) {
+		this.lives = lives;
+	}
+
+	public int getScore() {
+		return score;
 	}
 
-	public int getDeltaTime() {
-		return deltaTime;
+	public void setScore(int score) {
+		this.score = score;
 	}
 
-	public void setDeltaTime(int deltaTime) {
-		this.deltaTime = deltaTime;
+	public int getLevelTimer() {
+		return levelTimer;
+	}
+
+	public void setLevelTimer(int levelTimer) {
+		this.levelTimer = levelTimer;
+	}
+
+	public boolean isAlive() {
+		return isAlive;
+	}
+
+	public void setAlive(boolean isAlive) {
+		this.isAlive = isAlive;
 	}
 
 	public boolean isCheating() {
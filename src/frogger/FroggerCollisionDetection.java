@@ -24,25 +24,34 @@
  */
 
 package frogger;
-import java.util.List;
 
 import jig.engine.physics.AbstractBodyLayer;
-import jig.engine.util.Vector2D;
 
 public class FroggerCollisionDetection  {
 
 	private Frogger frog;
-	private CollisionObject frogSphere;
 	
 	// River and Road bounds, all we care about is Y axis in this game
-    private int riverY0 = 1*32;
-    private int riverY1 = getRiverY0() + 6* 32;
-    private int roadY0 = 8*32;
-    private int roadY1 = getRoadY0() + 5*32;
+    private int riverY0;
+    private int riverY1;
+    private int roadY0;
+    private int roadY1;
+    
+    private int worldWidth;
+    private int worldHeight;
+    
+    // Finds what the frog touches, a scan of all spheres by default
+    private CollisionSearch search;
 	
-	public FroggerCollisionDetection (Frogger f) {
+	public FroggerCollisionDetection (Frogger f, WorldLayout l) {
 		setFrog(f);
-		setFrogSphere(getFrog().getCollisionObjects().get(0));
+		search = new SphereScan(f);
+		riverY0 = l.getRiverTop()*32;
+		riverY1 = (l.getRiverBottom() + 1)*32;
+		roadY0 = l.getRoadTop()*32;
+		roadY1 = (l.getRoadBottom() + 1)*32;
+		worldWidth = l.getWidth();
+		worldHeight = l.getHeight();
 	}
 	
 	public void testCollision(AbstractBodyLayer<MovingEntity> l) {
@@ -50,33 +59,18 @@ public class FroggerCollisionDetection  {
 		if (!getFrog().isAlive())
 			return;
 		
-		Vector2D frogPos = getFrogSphere().getCenterPosition();
-		double dist2;
-		
 		if (isOutOfBounds()) {
-			getFrog().die();
+			getFrog().die(TelemetrySink.CAUSE_OUT_OF_BOUNDS);
 			return;
 		}
 		
-		for (MovingEntity i : l) {
-			if (!i.isActive())
-				continue;
-			
-			List<CollisionObject> collisionObjects = i.getCollisionObjects();
-
-			for (CollisionObject objectSphere : collisionObjects) {
-				dist2 = (getFrogSphere().getRadius() + objectSphere.getRadius()) 
-				      * (getFrogSphere().getRadius() + objectSphere.getRadius());
-
-				if (frogPos.distance2(objectSphere.getCenterPosition()) < dist2) {
-					collide(i, objectSphere);
-					return;
-				}
-			}
+		if (search.find(l)) {
+			collide(search.getHit(), search.getHitSphere());
+			return;
 		}
 		
 		if (isInRiver()) {
-			getFrog().die();
+			getFrog().die(TelemetrySink.CAUSE_DROWNED);
 		}
 		
 	}
@@ -86,9 +80,10 @@ public class FroggerCollisionDetection  {
 	 * @return
 	 */
 	public boolean isOutOfBounds() {
-	    Vector2D frogPos = getFrogSphere().getCenterPosition();
-	    return (frogPos.getY() < 32 || frogPos.getY() > Main.WORLD_HEIGHT) ||
-	           (frogPos.getX() < 0 || frogPos.getX() > Main.WORLD_WIDTH);
+	    double x = getFrogX();
+	    double y = getFrogY();
+	    return (y < 32 || y > worldHeight) ||
+	           (x < 0 || x > worldWidth);
 	}
 	
 	/**
@@ -96,9 +91,9 @@ public class FroggerCollisionDetection  {
 	 * @return
 	 */
 	public boolean isInRiver() {
-		Vector2D frogPos = getFrogSphere().getCenterPosition();
+		double y = getFrogY();
 		
-		return frogPos.getY() > getRiverY0() && frogPos.getY() < getRiverY1();
+		return y > getRiverY0() && y < getRiverY1();
 	}
 	
 	/**
@@ -106,21 +101,24 @@ public class FroggerCollisionDetection  {
 	 * @return
 	 */
 	public boolean isOnRoad() {
-		Vector2D frogPos = getFrogSphere().getCenterPosition();
+		double y = getFrogY();
 		
-		return frogPos.getY() > getRoadY0() && frogPos.getY() < getRoadY1();
+		return y > getRoadY0() && y < getRoadY1();
 
 	}
 	
-	public void collide(MovingEntity m, CollisionObject s) {
+	/**
+	 * Frog touched sphere s of m
+	 */
+	public void collide(MovingEntity m, int s) {
 
 		if (m instanceof Truck  || m instanceof CopCar) {
-			getFrog().die();
+			getFrog().die(TelemetrySink.CAUSE_VEHICLE);
 		}
 		
 		if (m instanceof Crocodile) {
 			if (s == ((Crocodile) m).head)
-				getFrog().die();
+				getFrog().die(TelemetrySink.CAUSE_CROCODILE);
 			else
 				getFrog().follow(m);
 		}
@@ -144,17 +142,31 @@ public class FroggerCollisionDetection  {
 	public Frogger getFrog() {
 		return frog;
 	}
+	
+	/**
+	 * Find what the frog touches with s instead of the sphere scan
+	 */
+	void setSearch(CollisionSearch s) {
+		search = s;
+	}
 
 	public void setFrog(Frogger frog) {
 		this.frog = frog;
 	}
 
-	public CollisionObject getFrogSphere() {
-		return frogSphere;
+	/**
+	 * @return - x of the centre of the frog's collision sphere
+	 */
+	public double getFrogX() {
+		return frog.getSphereX(0);
+	}
+
+	public double getFrogY() {
+		return frog.getSphereY(0);
 	}
 
-	public void setFrogSphere(CollisionObject frogSphere) {
-		this.frogSphere = frogSphere;
+	public double getFrogRadius() {
+		return frog.getShape().getRadius(0);
 	}
 
 	public int getRiverY0() {
@@ -54,30 +54,40 @@ public class FroggerUI implements ViewableLayer {
 	FontResource fontBlack = ResourceFactory.getFactory().getFontResource(
 			new Font("Sans Serif", Font.BOLD, 14), Color.black, null );
 	
-	Main game;
+	FroggerWorld game;
 	
-	public FroggerUI(final Main g) {
+	// Performance numbers in the top left corner, null when never enabled
+	private PerfOverlay overlay = null;
+	private final AffineTransform[] overlayAt = new AffineTransform[5];
+	
+	public FroggerUI(final FroggerWorld g) {
 		game = g;
+		for (int i = 0; i < overlayAt.length; i++)
+			overlayAt[i] = AffineTransform.getTranslateInstance(8, 28 + 16*i);
 	}
 	
 	
 	public void render(RenderingContext rc) {
 		
-		font.render("Time: " + Main.getLevelTimer(), rc, 
-				AffineTransform.getTranslateInstance(180, 7));
+		// HUD hangs off the right edge, menus are centred
+		int width = game.getLayout().getWidth();
+		int height = game.getLayout().getHeight();
+		
+		font.render("Time: " + game.getLevelTimer(), rc, 
+				AffineTransform.getTranslateInstance(width - 236, 7));
 		
-		font.render("Score: " + Main.getGameScore(), rc, 
-				AffineTransform.getTranslateInstance(310, 7));
+		font.render("Score: " + game.getGameScore(), rc, 
+				AffineTransform.getTranslateInstance(width - 106, 7));
 		
-		if (Main.getGameLives() > 0) {
+		if (game.getGameLives() > 0) {
 			int dx = 0;
 			
 			// if player has more than 10 lives, draw only 10 hearts
-			int maxHearts = Main.getGameLives();
+			int maxHearts = game.getGameLives();
 			if (maxHearts > 10)
 				maxHearts = 10;
 			else 
-				maxHearts = Main.getGameLives();
+				maxHearts = game.getGameLives();
 			
 			for (int i = 0; i < maxHearts; i++ ) {
 				heart.get(0).render(rc, 
@@ -87,36 +97,55 @@ public class FroggerUI implements ViewableLayer {
 		}
 
 		font.render("L" + game.gameLevel, rc, 
-				AffineTransform.getTranslateInstance(270, 7));
+				AffineTransform.getTranslateInstance(width - 146, 7));
+		
+		if (game.autopilotOn) {
+			font.render("Auto " + game.autopilot.getLastPlanNanos()/1000 + "us", rc, 
+					AffineTransform.getTranslateInstance(8, (double)height - 24));
+		}
+		
+		if (overlay != null && overlay.isVisible()) {
+			String[] lines = overlay.getLines();
+			for (int i = 0; i < lines.length && i < overlayAt.length; i++)
+				font.render(lines[i], rc, overlayAt[i]);
+		}
 		
 		if (game.gameState == Main.GAME_INTRO) {
 			   introTitle.get(0).render(rc, 
 						AffineTransform.getTranslateInstance(
-								(Main.WORLD_WIDTH - introTitle.get(0).getWidth())/2, 150));
+								(width - introTitle.get(0).getWidth())/2, 150));
 			   return;
 		}
 		
 		if (game.gameState == Main.GAME_INSTRUCTIONS) {
 			   instructions.get(0).render(rc, 
 						AffineTransform.getTranslateInstance(
-								(Main.WORLD_WIDTH - instructions.get(0).getWidth())/2, 100));
+								(width - instructions.get(0).getWidth())/2, 100));
 			   return;			
 		}
 		
 		if (game.gameState == Main.GAME_OVER) {
 		   gameOver.get(0).render(rc, 
 					AffineTransform.getTranslateInstance(
-							(Main.WORLD_WIDTH - gameOver.get(0).getWidth())/2, 150));
+							(width - gameOver.get(0).getWidth())/2, 150));
 		   return;
 		}
 		
 		if (game.gameState == Main.GAME_FINISH_LEVEL) {
 			 levelFinish.get(0).render(rc, 
 						AffineTransform.getTranslateInstance(
-								(Main.WORLD_WIDTH - levelFinish.get(0).getWidth())/2, 150));		 
+								(width - levelFinish.get(0).getWidth())/2, 150));		 
 		}
 	}
 
+	public PerfOverlay getOverlay() {
+		return overlay;
+	}
+	
+	public void setOverlay(PerfOverlay o) {
+		overlay = o;
+	}
+
 	public void update(long deltaMs) {
 		// Método heredado vacío.
 	}
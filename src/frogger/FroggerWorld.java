@@ -0,0 +1,716 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongSupplier;
+
+import jig.engine.ResourceFactory;
+import jig.engine.none.NoneResourceFactory;
+import jig.engine.physics.AbstractBodyLayer;
+import jig.engine.util.Vector2D;
+
+/**
+ * Everything that makes up one game of Frogger, minus the window
+ * 
+ * Main owns one world and feeds it keyboard input, tools such as the load
+ * test run many worlds headless in the same JVM. Input comes in as a bit
+ * mask of arrow keys, one mask per update.
+ * 
+ * A world can hold a crowd of frogs, see addFrog(). The first frog is the
+ * player: its lives end the game, and wind, heat waves, audio and the HUD
+ * follow it. Every other frog keeps its own lives, score and timer.
+ * 
+ * @author vitaliy
+ *
+ */
+public class FroggerWorld {
+	
+	// Input bits, one per arrow key
+	static final int KEY_UP    = 1;
+	static final int KEY_DOWN  = 2;
+	static final int KEY_LEFT  = 4;
+	static final int KEY_RIGHT = 8;
+	
+	private FroggerCollisionDetection frogCol;
+	private Frogger frog;
+	
+	// The player's frog first
+	private final List<Frogger> frogs = new ArrayList<>();
+	private final List<FroggerCollisionDetection> frogCols = new ArrayList<>();
+	private final CrowdCollision crowd;
+	private AudioEfx audiofx; // null when running headless
+	private QualityGovernor quality = null; // null for full quality
+	private WindGust wind;
+	private HeatWave hwave;
+	private GoalManager goalmanager;
+	
+	// Timers of the world, see Scheduler: traffic time moves with the traffic,
+	// world time in every state but the level summary, play time only in play
+	private final Scheduler trafficTime = new Scheduler();
+	private final Scheduler worldTime = new Scheduler();
+	private final Scheduler playTime = new Scheduler();
+	
+	private AbstractBodyLayer<MovingEntity> movingObjectsLayer;
+	private AbstractBodyLayer<MovingEntity> particleLayer;
+	
+	private final WorldLayout layout = WorldLayout.current();
+	
+	// One factory per layout lane in the same order, used by world snapshots
+	private MovingEntityFactory[] lanes;
+	private MovingEntityFactory[] roadLanes;
+	private MovingEntityFactory[] riverLanes;
+	private WorldSnapshot snapshot = new WorldSnapshot();
+	
+	// Occupancy of the playfield, rebuilt on demand once the world has moved
+	private final Bitboard bitboard = new Bitboard(layout);
+	private boolean bitboardStale = true;
+	
+	// Worlds with this many lanes or more update their traffic on the pool,
+	// when there is more than one core to run it
+	static final int PARALLEL_LANES = Integer.getInteger("frogger.parallelLanes", 64);
+	private final LaneUpdate laneUpdate = new LaneUpdate(this, ForkJoinPool.commonPool());
+	
+	// Single frog worlds can find collisions from scheduled contact spans,
+	// or from the sprite pixels, which takes precedence
+	static final boolean KINETIC = Boolean.getBoolean("frogger.kinetic");
+	static final boolean PIXEL = Boolean.getBoolean("frogger.pixel");
+	private KineticCollision kinetic = null;
+	
+	protected Autopilot autopilot;
+	protected boolean autopilotOn = false;
+	
+	protected int gameState = Main.GAME_INTRO;
+	protected int gameLevel = Main.STARTING_LEVEL;
+	
+	private TelemetrySink telemetry = null;
+	
+	// Where every random stream in the world gets its seed from
+	private long seed;
+	private final SeedSequence seeds;
+	private LongSupplier seedSource;
+	
+	/**
+	 * Prepare JIG for worlds without a window or sound card
+	 * 
+	 * Only the sprite sheet is loaded, audio clips stay unloaded and
+	 * AudioEfx.play() silently ignores them. Call once per JVM.
+	 */
+	public static void initHeadless() {
+		NoneResourceFactory.makeCurrentResourceFactory();
+		ResourceFactory.getFactory().getGameFrame("Frogger", 
+				WorldLayout.current().getWidth(), WorldLayout.current().getHeight(), false);
+		ResourceFactory.getFactory().loadSheet(Main.SPRITE_SHEET, Main.RSC_PATH + "frogger.xml");
+		SpriteKind.resolveAll();
+	}
+	
+	/**
+	 * @param withAudio - false for headless worlds
+	 */
+	public FroggerWorld(boolean withAudio) {
+		this(withAudio, SeedSequence.nextWorldSeed());
+	}
+	
+	/**
+	 * @param withAudio - false for headless worlds
+	 * @param seed - worlds with the same seed and input play exactly the same
+	 */
+	public FroggerWorld(boolean withAudio, long seed) {
+		this.seed = seed;
+		seeds = new SeedSequence(seed);
+		seedSource = seeds;
+		frog = new Frogger(this);
+		frogCol = new FroggerCollisionDetection(frog, layout);
+		if (PIXEL) {
+			frogCol.setSearch(new PixelCollision(frog));
+		}
+		else if (KINETIC) {
+			kinetic = new KineticCollision(frog);
+			frogCol.setSearch(kinetic);
+		}
+		frogs.add(frog);
+		frogCols.add(frogCol);
+		crowd = new CrowdCollision(layout);
+		if (withAudio)
+			audiofx = new AudioEfx(frogCol,frog,nextSeed(),playTime);
+		wind = new WindGust(layout, nextSeed(), playTime);
+		hwave = new HeatWave(nextSeed(), playTime);
+		goalmanager = new GoalManager(layout, nextSeed(), worldTime);
+		autopilot = new Autopilot(layout);
+		
+		movingObjectsLayer = new AbstractBodyLayer.IterativeUpdate<>();
+		particleLayer = new AbstractBodyLayer.IterativeUpdate<>();
+		
+		initializeLevel(1);
+	}
+	
+	public void initializeLevel(int level) {
+
+		/* dV is the velocity multiplier for all moving objects at the current game level */
+		double dV = level*0.05 + 1;
+		
+		movingObjectsLayer.clear();
+		trafficTime.clear();
+		if (kinetic != null)
+			kinetic.reset();
+		
+		WorldLayout.Lane[] l = layout.getLanes();
+		lanes = new MovingEntityFactory[l.length];
+		roadLanes = new MovingEntityFactory[layout.getRoadLanes()];
+		riverLanes = new MovingEntityFactory[layout.getRiverLanes()];
+		for (int i = 0; i < l.length; i++) {
+			lanes[i] = new MovingEntityFactory(l[i].getStart(layout.getWidth()), 
+					new Vector2D(l[i].speed*dV, 0), nextSeed());
+			if (l[i].type == WorldLayout.ROAD)
+				roadLanes[i - riverLanes.length] = lanes[i];
+			else
+				riverLanes[i] = lanes[i];
+		}
+		
+		goalmanager.init(level);
+		emit(TelemetrySink.LEVEL, (short) level, getGameScore());
+		for (Goal g : goalmanager.get()) {
+			movingObjectsLayer.add(g);
+		}
+			
+		/* Build some traffic before game starts buy running MovingEntityFactories for fews cycles,
+		 * wider worlds take longer to fill */
+		int cycles = Math.max(500, 500*layout.getColumns()/13);
+		for (int i=0; i<cycles; i++)
+			cycleTraffic(10);
+	}
+	
+	
+	/**
+	 * Populate movingObjectLayer with a cycle of cars/trucks, moving tree logs, etc
+	 * 
+	 * @param deltaMs
+	 */
+	public void cycleTraffic(long deltaMs) {
+		bitboardStale = true;
+		boolean parallel = laneUpdate.pays(lanes.length);
+		
+		if (parallel) {
+			// road lanes come after the river ones, the serial update adds them first
+			laneUpdate.spawn(lanes.length, riverLanes.length, deltaMs);
+		}
+		else {
+			roadTrafficUpdates(deltaMs);
+			riverTrafficUpdates(deltaMs);
+		}
+	    
+	    // Do Wind
+		emit(wind.genParticles(gameLevel));
+	    
+	    // HeatWave
+	    emit(hwave.genParticles(frog.getCenterPosition()));
+	        
+	    if (parallel)
+	    	laneUpdate.update(movingObjectsLayer, deltaMs);
+	    else
+	    	movingObjectsLayer.update(deltaMs);
+	    particleLayer.update(deltaMs);
+	    trafficTime.advance(deltaMs);
+	    if (kinetic != null)
+	    	kinetic.advance(deltaMs);
+	}
+	
+	private void roadTrafficUpdates(long deltaMs) {
+		for (int i = riverLanes.length; i < lanes.length; i++) {
+			MovingEntity m = spawnLane(i, deltaMs);
+			if (m != null) join(m);
+		}
+	}
+	
+	private void riverTrafficUpdates(long deltaMs) {
+		for (int i = 0; i < riverLanes.length; i++) {
+			MovingEntity m = spawnLane(i, deltaMs);
+			if (m != null) join(m);
+		}
+	}
+	
+	/**
+	 * Show a weather particle unless the quality governor thins them out
+	 */
+	private void emit(MovingEntity p) {
+		if (p == null)
+			return;
+		if (quality != null) {
+			if (!quality.keepParticle())
+				return;
+			((Particle) p).limitLife(quality.getParticleLife());
+		}
+		particleLayer.add(p);
+	}
+	
+	/**
+	 * Add new traffic to the world, its timers start on the traffic time line
+	 */
+	void join(MovingEntity m) {
+		movingObjectsLayer.add(m);
+		m.schedule(trafficTime);
+	}
+	
+	/**
+	 * Advance one lane factory, touches nothing outside the lane
+	 * 
+	 * @return - what the lane built, or null
+	 */
+	MovingEntity spawnLane(int i, long deltaMs) {
+		WorldLayout.Lane l = layout.getLanes()[i];
+		lanes[i].update(deltaMs);
+		switch (l.type) {
+		case WorldLayout.ROAD:
+			return lanes[i].buildVehicle();
+		case WorldLayout.TURTLES:
+			return lanes[i].buildShortLogWithTurtles(l.chance);
+		default:
+			return lanes[i].buildLongLogWithCrocodile(l.chance);
+		}
+	}
+	
+	/**
+	 * Log a game event for this world's session, if telemetry is on
+	 */
+	void emit(short type, short detail, int value) {
+		emit(frog, type, detail, value);
+	}
+	
+	/**
+	 * Log an event of one frog of the crowd, at its position
+	 */
+	void emit(Frogger f, short type, short detail, int value) {
+		if (telemetry == null)
+			return;
+		Vector2D p = f.getPosition();
+		telemetry.emit((int) f.getTime(), type, detail, gameLevel, 
+				(int) p.getX(), (int) p.getY(), value);
+	}
+	
+	/**
+	 * Add a frog to the crowd, it starts playing right away
+	 * 
+	 * @return - the new frog, its index in getFrogs() is the one input() takes
+	 */
+	public Frogger addFrog() {
+		Frogger f = new Frogger(this);
+		f.setLives(getGameLives());
+		frogs.add(f);
+		frogCols.add(new FroggerCollisionDetection(f, layout));
+		return f;
+	}
+	
+	public void setTelemetry(TelemetrySink t) {
+		telemetry = t;
+	}
+	
+	public TelemetrySink getTelemetry() {
+		return telemetry;
+	}
+	
+	/**
+	 * Seed for a new random stream, replays swap in the recorded seeds here
+	 */
+	public long nextSeed() {
+		return seedSource.getAsLong();
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	public LongSupplier getSeedSource() {
+		return seedSource;
+	}
+	
+	public void setSeedSource(LongSupplier s) {
+		seedSource = s;
+	}
+	
+	/**
+	 * Handling Frogger movement from a mask of pressed arrow keys
+	 * 
+	 * It registers a key press, and ignores all other key strokes
+	 * until the first key has been released
+	 * 
+	 * @param keys - KEY_UP, KEY_DOWN, KEY_LEFT, KEY_RIGHT or'ed together
+	 */
+	public void input(int keys) {
+		frog.input(keys);
+	}
+	
+	/**
+	 * A key event for the player's frog, see Frogger.press()
+	 */
+	public void press(int keys, long stamp) {
+		frog.press(keys, stamp);
+	}
+	
+	/**
+	 * Input for one frog of the crowd, 0 is the player
+	 */
+	public void input(int frogIndex, int keys) {
+		frogs.get(frogIndex).input(keys);
+	}
+	
+	/**
+	 * Start a new game from the first level
+	 */
+	public void startGame() {
+		for (Frogger f : frogs) {
+			f.setLives(Main.FROGGER_LIVES);
+			f.setScore(0);
+			f.setLevelTimer(Main.DEFAULT_LEVEL_TIME);
+			f.setPosition(layout.getFroggerStart());
+			f.follow(null);
+		}
+		gameLevel = Main.STARTING_LEVEL;
+		gameState = Main.GAME_PLAY;
+		if (audiofx != null)
+			audiofx.playGameMusic();
+		initializeLevel(gameLevel);
+	}
+	
+	/**
+	 * Continue with the next level after finishing one
+	 */
+	public void nextLevel() {
+		gameState = Main.GAME_PLAY;
+		if (audiofx != null)
+			audiofx.playGameMusic();
+		initializeLevel(++gameLevel);
+	}
+	
+	/**
+	 * Jump straight to a level, keeps lives and score
+	 */
+	public void skipToLevel(int level) {
+		gameLevel = level;
+		initializeLevel(gameLevel);
+	}
+	
+	/**
+	 * Advance the world by deltaMs, input must have been given before
+	 */
+	public void update(long deltaMs) {
+		switch(gameState) {
+		default:
+		case Main.GAME_PLAY:
+			if (autopilotOn)
+				autopilot.update(frog, movingObjectsLayer, goalmanager);
+			playTime.advance(deltaMs);
+			for (int i = 0; i < frogs.size(); i++)
+				frogs.get(i).update(deltaMs);
+			if (audiofx != null)
+				audiofx.update();
+
+			cycleTraffic(deltaMs);
+			if (frogs.size() == 1)
+				frogCol.testCollision(movingObjectsLayer);
+			else
+				crowd.testCollision(frogCols, movingObjectsLayer);
+			
+			// Wind gusts work only when Frogger is on the river
+			if (frogCol.isInRiver() && !wind.isWindy()) {
+				wind.start(gameLevel);
+				if (wind.isWindy())
+					emit(TelemetrySink.WIND, (short) 0, getGameScore());
+			}
+			wind.perform(frog, gameLevel, deltaMs);
+			
+			// Do the heat wave only when Frogger is on hot pavement
+			if (frogCol.isOnRoad() && !hwave.isHot()) {
+				hwave.start(frog, gameLevel);
+				if (hwave.isHot())
+					emit(TelemetrySink.HEAT, (short) 0, getGameScore());
+			}
+			hwave.perform(frog, gameLevel);
+			
+	
+			if (!frog.isAlive())
+				particleLayer.clear();
+			
+			worldTime.advance(deltaMs);
+			
+			if (goalmanager.getUnreached().isEmpty()) {
+				gameState = Main.GAME_FINISH_LEVEL;
+				if (audiofx != null)
+					audiofx.playCompleteLevel();
+				particleLayer.clear();
+			}
+			
+			if (getGameLives() < 1) {
+				gameState = Main.GAME_OVER;
+			}
+			
+			break;
+		
+		case Main.GAME_OVER:		
+		case Main.GAME_INSTRUCTIONS:
+		case Main.GAME_INTRO:
+			worldTime.advance(deltaMs);
+			cycleTraffic(deltaMs);
+			break;
+			
+		case Main.GAME_FINISH_LEVEL:
+			break;		
+		}
+	}
+	
+	/**
+	 * Save the complete game state into b, starting at its current position
+	 * 
+	 * Use WorldSnapshot.allocate(this) for a buffer that is large enough, 
+	 * WorldSnapshot.bound(this) tells how much room it takes at most
+	 * @param b
+	 */
+	public void saveSnapshot(ByteBuffer b) {
+		int bound = WorldSnapshot.bound(this);
+		if (b.remaining() < bound)
+			throw new IllegalArgumentException("Snapshot needs up to " + bound 
+					+ " bytes, buffer has " + b.remaining());
+		
+		WorldSnapshot.writeHeader(b);
+		b.putInt(gameState);
+		b.putInt(gameLevel);
+		b.put((byte) (autopilotOn ? 1 : 0));
+		b.putLong(trafficTime.now());
+		b.putLong(worldTime.now());
+		b.putLong(playTime.now());
+		
+		// Seed sequence and position, so later levels get the same seeds
+		b.putLong(seed);
+		b.putLong(seeds.getIndex());
+		
+		b.putInt(frogs.size());
+		for (Frogger f : frogs)
+			f.saveState(b);
+		wind.saveState(b);
+		hwave.saveState(b);
+		b.put((byte) (audiofx != null ? 1 : 0));
+		if (audiofx != null)
+			audiofx.saveState(b);
+		goalmanager.saveState(b);
+		
+		b.putInt(layout.getColumns());
+		b.putInt(lanes.length);
+		for (MovingEntityFactory lane : lanes)
+			lane.saveState(b);
+		
+		snapshot.saveLayer(movingObjectsLayer, goalmanager.get(), b);
+		snapshot.saveLayer(particleLayer, goalmanager.get(), b);
+		
+		// Frogs follow objects by reference, store layer indices instead
+		IdentityHashMap<MovingEntity, Integer> index = new IdentityHashMap<>();
+		for (int i = 0; i < movingObjectsLayer.size(); i++)
+			index.put(movingObjectsLayer.get(i), i);
+		for (Frogger f : frogs) {
+			Integer follow = f.getFollowObject() == null ? null : index.get(f.getFollowObject());
+			b.putInt(follow == null ? -1 : follow);
+		}
+	}
+	
+	/**
+	 * Restore the game state written by saveSnapshot() into the existing objects
+	 * @param b
+	 */
+	public void restoreSnapshot(ByteBuffer b) {
+		WorldSnapshot.readHeader(b);
+		gameState = b.getInt();
+		gameLevel = b.getInt();
+		autopilotOn = b.get() != 0;
+		long traffic = b.getLong();
+		long world = b.getLong();
+		long play = b.getLong();
+		
+		seed = b.getLong();
+		seeds.reset(seed, b.getLong());
+		
+		int count = b.getInt();
+		while (frogs.size() > count) {
+			frogs.remove(frogs.size() - 1);
+			frogCols.remove(frogCols.size() - 1);
+		}
+		while (frogs.size() < count)
+			addFrog();
+		
+		// Every subsystem registers its timers again while restoring
+		trafficTime.reset(traffic);
+		worldTime.reset(world);
+		playTime.reset(play);
+		for (Frogger f : frogs)
+			f.restoreState(b);
+		wind.restoreState(b);
+		hwave.restoreState(b);
+		if (b.get() != 0) {
+			if (audiofx != null)
+				audiofx.restoreState(b);
+			else
+				AudioEfx.skipState(b);
+		}
+		goalmanager.restoreState(b);
+		
+		int columns = b.getInt();
+		int n = b.getInt();
+		if (columns != layout.getColumns() || n != lanes.length)
+			throw new IllegalArgumentException("Snapshot is " + columns + " columns and " + n 
+					+ " lanes, world is " + layout.getColumns() + " and " + lanes.length);
+		for (MovingEntityFactory lane : lanes)
+			lane.restoreState(b);
+		
+		snapshot.restoreLayer(movingObjectsLayer, goalmanager.get(), b);
+		snapshot.restoreLayer(particleLayer, goalmanager.get(), b);
+		for (int i = 0; i < movingObjectsLayer.size(); i++)
+			movingObjectsLayer.get(i).schedule(trafficTime);
+		
+		for (Frogger f : frogs) {
+			int follow = b.getInt();
+			if (follow >= 0)
+				f.follow(movingObjectsLayer.get(follow));
+		}
+		bitboardStale = true;
+		if (kinetic != null)
+			kinetic.reset();
+	}
+
+	public Frogger getFrog() {
+		return frog;
+	}
+	
+	/**
+	 * @return - every frog in the world, the player first
+	 */
+	public List<Frogger> getFrogs() {
+		return Collections.unmodifiableList(frogs);
+	}
+
+	public WorldLayout getLayout() {
+		return layout;
+	}
+
+	public FroggerCollisionDetection getFrogCol() {
+		return frogCol;
+	}
+
+	/**
+	 * @return - time line that only moves while the game is played
+	 */
+	Scheduler getPlayTime() {
+		return playTime;
+	}
+	
+	public int getLaneCount() {
+		return lanes.length;
+	}
+	
+	public GoalManager getGoalManager() {
+		return goalmanager;
+	}
+	
+	public WindGust getWind() {
+		return wind;
+	}
+	
+	public HeatWave getHeatWave() {
+		return hwave;
+	}
+
+	/**
+	 * @return - hazards, platforms, goals and safe cells of the world as it is now
+	 */
+	public Bitboard getBitboard() {
+		if (bitboardStale) {
+			bitboard.build(movingObjectsLayer, goalmanager.get());
+			bitboardStale = false;
+		}
+		return bitboard;
+	}
+	
+	public AbstractBodyLayer<MovingEntity> getMovingObjectsLayer() {
+		return movingObjectsLayer;
+	}
+
+	public AbstractBodyLayer<MovingEntity> getParticleLayer() {
+		return particleLayer;
+	}
+	
+	public QualityGovernor getQuality() {
+		return quality;
+	}
+	
+	/**
+	 * Let q decide how many particles and ambient sounds to show
+	 */
+	public void setQuality(QualityGovernor q) {
+		quality = q;
+		if (audiofx != null)
+			audiofx.setQuality(q);
+	}
+
+	public int getGameState() {
+		return gameState;
+	}
+
+	public void setGameState(int gameState) {
+		this.gameState = gameState;
+	}
+
+	public int getGameLevel() {
+		return gameLevel;
+	}
+
+	/**
+	 * Lives, score and level timer are the player's
+	 */
+	public int getGameLives() {
+		return frog.getLives();
+	}
+
+	public void setGameLives(int gameLives) {
+		frog.setLives(gameLives);
+	}
+
+	public int getGameScore() {
+		return frog.getScore();
+	}
+
+	public void setGameScore(int gameScore) {
+		frog.setScore(gameScore);
+	}
+
+	public int getLevelTimer() {
+		return frog.getLevelTimer();
+	}
+
+	public void setLevelTimer(int levelTimer) {
+		frog.setLevelTimer(levelTimer);
+	}
+}
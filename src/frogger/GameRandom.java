@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.Random;
+
+/**
+ * Random number generator whose whole state is a single long
+ * 
+ * Produces exactly the same sequence as java.util.Random, but the seed
+ * can be read back and written again, so that world snapshots can
+ * capture and restore every random stream in the game.
+ * 
+ * @author vitaliy
+ *
+ */
+public class GameRandom extends Random {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+	
+	// Not initialized here on purpose, Random's constructor calls setSeed() first
+	private long state;
+	
+	public GameRandom(long seed) {
+		super(seed);
+	}
+	
+	@Override
+	public synchronized void setSeed(long seed) {
+		state = (seed ^ MULTIPLIER) & MASK;
+		super.setSeed(seed);
+	}
+	
+	@Override
+	protected int next(int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+	
+	/**
+	 * @return - current internal state, suitable for setState()
+	 */
+	public long getState() {
+		return state;
+	}
+	
+	public void setState(long s) {
+		state = s & MASK;
+	}
+}
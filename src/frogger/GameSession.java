@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.io.IOException;
+
+/**
+ * A headless game driven by a synthetic player
+ * 
+ * Menus are skipped the way a player would press space through them: a new
+ * game starts right away after the intro or game over, and finished levels
+ * continue with the next one.
+ * 
+ * @author vitaliy
+ *
+ */
+public class GameSession {
+	
+	private final FroggerWorld world;
+	private final SyntheticPlayer player;
+	
+	private long ticks = 0;
+	private int gamesPlayed = 0;
+	
+	private ReplayWriter recorder = null;
+	private TelemetryWriter telemetryWriter = null;
+	
+	public GameSession(SyntheticPlayer p) {
+		world = new FroggerWorld(false);
+		player = p;
+	}
+	
+	/**
+	 * @param seed - world seed, the same seed and player replay the same game
+	 */
+	public GameSession(SyntheticPlayer p, long seed) {
+		world = new FroggerWorld(false, seed);
+		player = p;
+	}
+	
+	/**
+	 * Feed one input and advance the world by deltaMs
+	 */
+	public void update(long deltaMs) {
+		int keys = player.nextInput(world, ticks);
+		if (recorder != null)
+			recorder.tick(keys, deltaMs);
+		
+		if (step(world, keys, deltaMs))
+			gamesPlayed++;
+		ticks++;
+	}
+	
+	/**
+	 * One tick of a synthetic game, shared with replays so that both take
+	 * exactly the same path through the menus
+	 * 
+	 * @return - true if a new game was started
+	 */
+	static boolean step(FroggerWorld w, int keys, long deltaMs) {
+		boolean started = false;
+		
+		switch(w.getGameState()) {
+		case Main.GAME_INTRO:
+		case Main.GAME_INSTRUCTIONS:
+		case Main.GAME_OVER:
+			started = true;
+			w.startGame();
+			break;
+		case Main.GAME_FINISH_LEVEL:
+			w.nextLevel();
+			break;
+		default:
+			break;
+		}
+		
+		w.input(keys);
+		w.update(deltaMs);
+		return started;
+	}
+	
+	/**
+	 * Start recording this session, from the next update on
+	 */
+	public void record(ReplayWriter r) {
+		recorder = r;
+	}
+	
+	/**
+	 * Log this session's events through w
+	 */
+	public void logTo(TelemetryWriter w, int sessionId, int ringRecords) {
+		telemetryWriter = w;
+		world.setTelemetry(w.newSink(sessionId, ringRecords));
+	}
+	
+	/**
+	 * Finish the recording and event log, if any
+	 */
+	public void close() throws IOException {
+		if (recorder != null)
+			recorder.close();
+		recorder = null;
+		
+		if (telemetryWriter != null)
+			telemetryWriter.removeSink(world.getTelemetry());
+		world.setTelemetry(null);
+		telemetryWriter = null;
+	}
+	
+	public FroggerWorld getWorld() {
+		return world;
+	}
+	
+	public long getTicks() {
+		return ticks;
+	}
+	
+	public int getGamesPlayed() {
+		return gamesPlayed;
+	}
+}
@@ -24,6 +24,8 @@
  */
 
 package frogger;
+import java.nio.ByteBuffer;
+
 import jig.engine.util.Vector2D;
 
 public class Goal extends MovingEntity {
@@ -32,18 +34,14 @@ public class Goal extends MovingEntity {
 	protected boolean isBonus = false;
 	
 	public Goal(int loc) {
-		super(Main.SPRITE_SHEET + "#goal");
+		super(SpriteKind.GOAL);
 		position = new Vector2D(32*(1+2*loc), 32);
-		collisionObjects.add(new CollisionObject("colSmall", position));
-		sync(position);
 		setFrame(0);
 	}
 
 	public Goal(Vector2D pos) {
-		super(Main.SPRITE_SHEET + "#goal");
+		super(SpriteKind.GOAL);
 		position = pos;
-		collisionObjects.add(new CollisionObject("colSmall", position));
-		sync(position);
 		setFrame(0);		
 	}
 	
@@ -63,6 +61,20 @@ public class Goal extends MovingEntity {
 		
 	}
 	
+	@Override
+	public void saveState(ByteBuffer b) {
+		super.saveState(b);
+		b.put((byte) (isReached ? 1 : 0));
+		b.put((byte) (isBonus ? 1 : 0));
+	}
+	
+	@Override
+	public void restoreState(ByteBuffer b) {
+		super.restoreState(b);
+		isReached = b.get() != 0;
+		isBonus = b.get() != 0;
+	}
+	
 	@Override
 	public void update(long deltaMs) {
 		// Método heredado vacío.
@@ -25,9 +25,9 @@
 
 package frogger;
 
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 
 import jig.engine.util.Vector2D;
 
@@ -37,45 +37,46 @@ public class GoalManager {
 	static final int MAX_NUM_OF_GOALS = 6;
 	
 	private List<Goal> goals;
-	private Random r;
+	private GameRandom r;
+	private final WorldLayout layout;
 
 	protected boolean showingBonus = false;
 	
 	private int bonusRateMs = 5000;
 	private int bonusShowMs = 5000;
-	private int dRMs = 0;
-	private int dSMs = 0;
 	
-	public GoalManager() {
+	// World time the bonus is shown or hidden next
+	private final Scheduler time;
+	private long bonusMs;
+	
+	private final Scheduler.Task bonus = new Scheduler.Task() {
+		public void run(Scheduler s) {
+			doBonusCheck();
+		}
+	};
+	
+	public GoalManager(WorldLayout l, long seed, Scheduler worldTime) {
+		layout = l;
 		goals = new LinkedList<>();
-		r = new Random(System.currentTimeMillis());
+		r = new GameRandom(seed);
+		time = worldTime;
 		init(1);
+		bonusMs = time.now() + bonusRateMs;
+		time.at(bonusMs, bonus);
 	}
 	
 	
 	/**
 	 * First level only has 2 goals
-	 * Second - 4 goals
-	 * All others have standard 6 goals
+	 * All others have 4, wider layouts more, see WorldLayout.getGoalColumns()
 	 * @param level
 	 */
 	public void init(final int level) {
 		
 		goals.clear();
 		
-			switch(level){
-				case 1:
-					goals.add(new Goal(new Vector2D(5*32,32)));
-					goals.add(new Goal(new Vector2D(7*32,32)));
-					break;
-				case 2:
-				default:
-					goals.add(new Goal(new Vector2D(5*32,32)));
-					goals.add(new Goal(new Vector2D(7*32,32)));
-					goals.add(new Goal(new Vector2D(3*32,32)));
-					goals.add(new Goal(new Vector2D(9*32,32)));
-					break;
-			}
+		for (int c : layout.getGoalColumns(level))
+			goals.add(new Goal(new Vector2D(c*32,32)));
 	}
 	
 	/**
@@ -100,29 +101,58 @@ public class GoalManager {
 	}
 	
 	/**
-	 * Based on internal timer, display bonus at a goal
-	 * that hasn't been reached for a duration specified by bonusShowMs
+	 * Run by the world time line, display bonus at a goal that hasn't
+	 * been reached for a duration specified by bonusShowMs, then hide it
+	 * for bonusRateMs
 	 */
 	public void doBonusCheck() {
-		if (!showingBonus && dRMs > bonusRateMs) {
-			dSMs = 0;
+		if (!showingBonus) {
+			bonusMs = time.now() + bonusShowMs;
 			showingBonus = true;
 			List<Goal> l = getUnreached();
-			l.get(r.nextInt(l.size())).setBonus(true);
+			// the last goal may have been reached in this very tick
+			if (!l.isEmpty())
+				l.get(r.nextInt(l.size())).setBonus(true);
 		}
-		
-		if (showingBonus && dSMs > bonusShowMs) {
-			dRMs = 0;
+		else {
+			bonusMs = time.now() + bonusRateMs;
 			showingBonus = false;
 			for (Goal g : goals)
 				if (!g.isReached)
 					g.setBonus(false);		
-		}		
+		}
+		time.at(bonusMs, bonus);
 	}
 	
-	public void update(long deltaMs) {
-		dRMs += deltaMs;
-		dSMs += deltaMs;
-		doBonusCheck();
+	/**
+	 * Goals are written in order, restore reuses the existing Goal objects
+	 * and only builds new ones when the snapshot holds more goals
+	 * @param b
+	 */
+	public void saveState(ByteBuffer b) {
+		b.putInt(goals.size());
+		for (Goal g : goals)
+			g.saveState(b);
+		b.put((byte) (showingBonus ? 1 : 0));
+		b.putInt(bonusRateMs);
+		b.putInt(bonusShowMs);
+		b.putLong(bonusMs);
+		b.putLong(r.getState());
+	}
+	
+	public void restoreState(ByteBuffer b) {
+		int n = b.getInt();
+		while (goals.size() > n)
+			goals.remove(goals.size() - 1);
+		while (goals.size() < n)
+			goals.add(new Goal(new Vector2D(0,32)));
+		for (Goal g : goals)
+			g.restoreState(b);
+		showingBonus = b.get() != 0;
+		bonusRateMs = b.getInt();
+		bonusShowMs = b.getInt();
+		bonusMs = b.getLong();
+		r.setState(b.getLong());
+		time.at(bonusMs, bonus);
 	}
 }
@@ -25,7 +25,7 @@
 
 package frogger;
 
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 import jig.engine.util.Vector2D;
 
@@ -33,19 +33,37 @@ public class HeatWave {
 	static final int PERIOD    = 2000;  //milliseconds
 	static final int DURATION  = 1000;  //milliseconds
 	
-	Random r;
+	static final SpriteKind PARTICLE_SPRITE = SpriteKind.SMOKE_CLOUD;
 	
-	private long timeMs;
-	private long durationMs;
+	GameRandom r;
+	
+	// Play time a heat wave may start again, and when the current one started
+	private final Scheduler time;
+	private boolean isReady;
+	private long readyMs;
+	private long startMs;
 	private long heatWaveMs;
 	
 	private boolean isHot;
 	
-	public HeatWave() {
+	private final Scheduler.Task ready = new Scheduler.Task() {
+		public void run(Scheduler s) {
+			isReady = true;
+		}
+	};
+	
+	public HeatWave(long seed, Scheduler playTime) {
 		isHot = false;
-		timeMs = 0;
+		time = playTime;
 		heatWaveMs = 0;
-		r = new Random(System.currentTimeMillis());
+		r = new GameRandom(seed);
+		rearm(PERIOD);
+	}
+	
+	private void rearm(long periodMs) {
+		isReady = false;
+		readyMs = time.now() + periodMs;
+		time.at(readyMs, ready);
 	}
 	
 	/**
@@ -58,7 +76,7 @@ public class HeatWave {
 			return;
 		}
 		
-		if (isHot && durationMs > (DURATION - (level*10)) && !f.isHwHasMoved()) {
+		if (isHot && time.now() - startMs > (DURATION - (level*10)) && !f.isHwHasMoved()) {
 			f.randomJump(r.nextInt(4));
 			isHot = false;
 		}
@@ -75,14 +93,14 @@ public class HeatWave {
 	 */
 	public void start (Frogger f, final int GameLevel) {
 		
-		if (!isHot && timeMs > PERIOD) {		
+		if (!isHot && isReady) {		
 			if (r.nextInt(100) < GameLevel*10) {
-				durationMs = 1;
+				startMs = time.now() - 1;
 				isHot = true;
 				f.setHwHasMoved(false);
-				AudioEfx.heat.play(0.2);
+				AudioEfx.play(AudioEfx.heat, 0.2);
 			}		
-			timeMs = 0;
+			rearm(PERIOD);
 		}
 	}
 	
@@ -102,7 +120,7 @@ public class HeatWave {
 		// Generate particles from center of the Frogger to all directions around
 		Vector2D v = new Vector2D((r.nextDouble()-0.5)*0.1,(r.nextDouble()-0.5)*0.1);
 		
-		return new Particle(Main.SPRITE_SHEET + "#smoke_cloud", pos,v,1000);
+		return new Particle(PARTICLE_SPRITE, pos,v,1000);
 	}
 	
 	/**
@@ -123,8 +141,30 @@ public class HeatWave {
 		return curTemp;
 	}
 	
-	public void update(final long deltaMs) {
-		timeMs += deltaMs;
-		durationMs += deltaMs;
+	public boolean isHot() {
+		return isHot;
+	}
+	
+	/**
+	 * Play time is part of the world snapshot, only the due times are saved here
+	 */
+	public void saveState(ByteBuffer b) {
+		b.put((byte) (isReady ? 1 : 0));
+		b.putLong(readyMs);
+		b.putLong(startMs);
+		b.putLong(heatWaveMs);
+		b.put((byte) (isHot ? 1 : 0));
+		b.putLong(r.getState());
+	}
+	
+	public void restoreState(ByteBuffer b) {
+		isReady = b.get() != 0;
+		readyMs = b.getLong();
+		startMs = b.getLong();
+		heatWaveMs = b.getLong();
+		isHot = b.get() != 0;
+		r.setState(b.getLong());
+		if (!isReady)
+			time.at(readyMs, ready);
 	}
 }
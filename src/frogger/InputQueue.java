@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Arrow key events with their System.nanoTime() stamps, from the AWT event
+ * thread to the game loop
+ * 
+ * A single producer, single consumer ring: the AWT thread writes an event
+ * and publishes it by moving the tail, the game loop reads events up to the
+ * tail and frees them by moving the head. Nothing locks and nothing is 
+ * allocated per event. When the game loop stalls long enough to fill the
+ * ring, further events are dropped and counted.
+ * 
+ * Events carry a FroggerWorld.KEY_* mask and whether the key went down. 
+ * Auto repeat presses of a key that is already down are left out, so every
+ * press is one move however long the key is held.
+ * 
+ * @author vitaliy
+ *
+ */
+public class InputQueue implements KeyListener {
+	
+	private final int mask;
+	private final long[] stamps;
+	private final int[] keys;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long dropped = 0;
+	
+	// Keys down as the AWT thread last saw them
+	private int down = 0;
+	
+	// Event in hand of the consumer, see poll()
+	private long stamp;
+	private int key;
+	private boolean pressed;
+	
+	/**
+	 * @param capacity - rounded up to a power of two
+	 */
+	public InputQueue(int capacity) {
+		int n = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mask = n - 1;
+		stamps = new long[n];
+		keys = new int[n];
+	}
+	
+	/**
+	 * @return - FroggerWorld.KEY_* of an arrow key, 0 for any other key
+	 */
+	static int keyOf(int keyCode) {
+		switch (keyCode) {
+		case KeyEvent.VK_UP:    return FroggerWorld.KEY_UP;
+		case KeyEvent.VK_DOWN:  return FroggerWorld.KEY_DOWN;
+		case KeyEvent.VK_LEFT:  return FroggerWorld.KEY_LEFT;
+		case KeyEvent.VK_RIGHT: return FroggerWorld.KEY_RIGHT;
+		default:                return 0;
+		}
+	}
+	
+	public void keyPressed(KeyEvent e) {
+		int k = keyOf(e.getKeyCode());
+		if (k == 0 || (down & k) != 0)
+			return;
+		down |= k;
+		offer(System.nanoTime(), k);
+	}
+	
+	public void keyReleased(KeyEvent e) {
+		int k = keyOf(e.getKeyCode());
+		if (k == 0)
+			return;
+		down &= ~k;
+		offer(System.nanoTime(), -k);
+	}
+	
+	public void keyTyped(KeyEvent e) {
+	}
+	
+	/**
+	 * Producer side, a negative key is a release
+	 * 
+	 * @return - false if the ring was full and the event dropped
+	 */
+	public boolean offer(long nanos, int k) {
+		long t = tail.get();
+		if (t - head.get() > mask) {
+			dropped++;
+			return false;
+		}
+		int i = (int) (t & mask);
+		stamps[i] = nanos;
+		keys[i] = k;
+		tail.lazySet(t + 1);
+		return true;
+	}
+	
+	/**
+	 * Consumer side, take the oldest event, then read it with getStamp(),
+	 * getKey() and isPressed()
+	 * 
+	 * @return - false when there is none
+	 */
+	public boolean poll() {
+		long h = head.get();
+		if (h == tail.get())
+			return false;
+		int i = (int) (h & mask);
+		stamp = stamps[i];
+		int k = keys[i];
+		head.lazySet(h + 1);
+		
+		pressed = k > 0;
+		key = Math.abs(k);
+		return true;
+	}
+	
+	/**
+	 * Consumer side, drop every event offered so far
+	 */
+	public void clear() {
+		head.lazySet(tail.get());
+	}
+	
+	/**
+	 * @return - System.nanoTime() when the event came in
+	 */
+	public long getStamp() {
+		return stamp;
+	}
+	
+	/**
+	 * @return - FroggerWorld.KEY_* of the event
+	 */
+	public int getKey() {
+		return key;
+	}
+	
+	public boolean isPressed() {
+		return pressed;
+	}
+	
+	/**
+	 * @return - events lost to a full ring
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.Arrays;
+
+/**
+ * Microbenchmark of the SphereKernel implementations
+ * 
+ * Usage: KernelBench [-frogs N] [-spheres N,N,...] [-rounds N] [-millis N]
+ * 
+ * For every sphere count a lane of spheres is tested against all frogs with
+ * firstKeys(), scalar and Vector API kernels take turns for a number of 
+ * rounds, the first rounds only warm up the JIT. Reports nanoseconds per
+ * frog per lane and checks both kernels agree. Run with
+ * --add-modules jdk.incubator.vector to include the vector kernel.
+ * 
+ * @author vitaliy
+ *
+ */
+public class KernelBench {
+	
+	private int frogs = 256;
+	private int[] spheres = {4, 16, 64, 256, 1024};
+	private int rounds = 10;
+	private long millis = 200;
+	
+	// keeps the JIT from dropping the work
+	private long sink = 0;
+	
+	public static void main(String[] args) {
+		KernelBench b = new KernelBench();
+		b.parse(args);
+		b.run();
+	}
+	
+	private void parse(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String v = args[i + 1];
+			switch(args[i]) {
+			case "-frogs":   frogs = Integer.parseInt(v); break;
+			case "-spheres": spheres = Arrays.stream(v.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+			case "-rounds":  rounds = Integer.parseInt(v); break;
+			case "-millis":  millis = Long.parseLong(v); break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+	
+	public void run() {
+		SphereKernel scalar = new ScalarSphereKernel();
+		SphereKernel vector = SphereKernel.load(true);
+		boolean haveVector = !(vector instanceof ScalarSphereKernel);
+		
+		System.out.printf("%d frogs, %d rounds of %d ms, vector kernel %s%n", 
+				frogs, rounds, millis, haveVector ? "loaded" : "unavailable");
+		System.out.printf("%8s %12s %12s %8s%n", "spheres", "scalar ns", "vector ns", "speedup");
+		
+		GameRandom r = new GameRandom(1);
+		for (int m : spheres) {
+			// a lane of logs 64 px apart, frogs scattered along it
+			double[] x = new double[m], y = new double[m], rad = new double[m], key = new double[m];
+			for (int i = 0; i < m; i++) {
+				x[i] = i * 64 + r.nextDouble() * 32;
+				y[i] = 176 + 16;
+				rad[i] = i % 4 == 0 ? CollisionShape.LARGE : CollisionShape.SMALL;
+				key[i] = r.nextInt(1 << 20);
+			}
+			double[] fx = new double[frogs], fy = new double[frogs], fr = new double[frogs];
+			for (int f = 0; f < frogs; f++) {
+				fx[f] = r.nextDouble() * m * 64;
+				fy[f] = 176 + 16 + r.nextDouble() * 8 - 4;
+				fr[f] = CollisionShape.LARGE;
+			}
+			
+			int[] a = new int[frogs], b = new int[frogs];
+			scalar.firstKeys(fx, fy, fr, frogs, x, y, rad, key, 0, m, a);
+			vector.firstKeys(fx, fy, fr, frogs, x, y, rad, key, 0, m, b);
+			if (!Arrays.equals(a, b))
+				throw new IllegalStateException("Kernels disagree for " + m + " spheres");
+			
+			double scalarNs = Double.MAX_VALUE, vectorNs = Double.MAX_VALUE;
+			for (int round = 0; round < rounds; round++) {
+				double s = time(scalar, fx, fy, fr, x, y, rad, key, m, a);
+				double v = haveVector ? time(vector, fx, fy, fr, x, y, rad, key, m, b) : Double.NaN;
+				if (round >= rounds / 2) {
+					scalarNs = Math.min(scalarNs, s);
+					vectorNs = Math.min(vectorNs, v);
+				}
+			}
+			System.out.printf("%8d %12.1f %12.1f %8.2f%n", m, scalarNs, vectorNs, scalarNs / vectorNs);
+		}
+		if (sink == 42)
+			System.out.println();
+	}
+	
+	/**
+	 * @return - nanoseconds per frog per lane
+	 */
+	private double time(SphereKernel k, double[] fx, double[] fy, double[] fr, 
+			double[] x, double[] y, double[] rad, double[] key, int m, int[] hits) {
+		long calls = 0;
+		long t0 = System.nanoTime();
+		long end = t0 + millis * 1000000L;
+		long t;
+		do {
+			k.firstKeys(fx, fy, fr, frogs, x, y, rad, key, 0, m, hits);
+			sink += hits[0];
+			calls++;
+		} while ((t = System.nanoTime()) < end);
+		return (double) (t - t0) / calls / frogs;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.Arrays;
+
+import jig.engine.physics.AbstractBodyLayer;
+
+/**
+ * Kinetic collision of one frog against the lane entities
+ * 
+ * Lane entities keep their velocity for life, and the frog moves on a 
+ * straight line too, sitting still or riding a platform, until it jumps, 
+ * gets blown by the wind or follows something else. So the span of time in
+ * which an entity can touch the frog is known when the entity appears. The 
+ * spans wait in a priority queue ordered by their start, a tick only pops 
+ * the spans that have begun and tests those few entities exactly.
+ * 
+ * Spans are widened by SLACK pixels and the exact test keeps the first 
+ * touching entity in layer order, so the result is the one of the full scan
+ * in FroggerCollisionDetection. The queue is rebuilt once the frog changes
+ * its trajectory, see Frogger.getTrajectory(), or drifts off the predicted
+ * line. Entities added to the end of the layer are queued as they appear.
+ * 
+ * FroggerWorld uses it with -Dfrogger.kinetic=true, worlds with more than
+ * one frog keep using CrowdCollision.
+ * 
+ * @author vitaliy
+ *
+ */
+class KineticCollision implements CollisionSearch {
+	
+	// spans are this much wider than the contact, in pixels
+	private static final double SLACK = 1.0;
+	
+	private final Frogger frog;
+	
+	// ms of traffic moved since the world was built
+	private long now = 0;
+	
+	// The frog's sphere at baseTime and its speed from there
+	private long baseTime;
+	private double baseX;
+	private double baseY;
+	private double frogV;
+	private int trajectory;
+	private boolean stale = true;
+	
+	// Layer entities below this index are queued
+	private int seen = 0;
+	
+	// Span of the entity at each layer index
+	private double[] start = new double[256];
+	private double[] end = new double[256];
+	
+	// Layer indices of spans not started yet, a binary heap on start
+	private int[] heap = new int[256];
+	private int heapSize = 0;
+	
+	// Layer indices of started spans
+	private int[] live = new int[64];
+	private int liveSize = 0;
+	
+	private MovingEntity hit;
+	private int hitSphere;
+	
+	KineticCollision(Frogger f) {
+		frog = f;
+	}
+	
+	/**
+	 * The traffic moved by deltaMs
+	 */
+	void advance(long deltaMs) {
+		now += deltaMs;
+	}
+	
+	/**
+	 * Forget the queue, the layer has been replaced or restored
+	 */
+	void reset() {
+		stale = true;
+	}
+	
+	public boolean find(AbstractBodyLayer<MovingEntity> l) {
+		if (stale || l.size() < seen || frog.getTrajectory() != trajectory || isOffLine())
+			rebuild(l);
+		else
+			queue(l);
+		
+		while (heapSize > 0 && start[heap[0]] <= now) {
+			if (liveSize == live.length)
+				live = Arrays.copyOf(live, liveSize * 2);
+			live[liveSize++] = pop();
+		}
+		
+		double frogX = frog.getSphereX(0);
+		double frogY = frog.getSphereY(0);
+		double frogR = frog.getShape().getRadius(0);
+		int first = Integer.MAX_VALUE;
+		hit = null;
+		
+		for (int k = 0; k < liveSize; k++) {
+			int i = live[k];
+			if (end[i] < now) {
+				live[k--] = live[--liveSize];
+				continue;
+			}
+			if (i > first)
+				continue;
+			
+			MovingEntity m = l.get(i);
+			if (!m.isActive())
+				continue;
+			CollisionShape shape = m.getShape();
+			for (int s = 0; s < shape.size(); s++) {
+				double dist2 = (frogR + shape.getRadius(s)) * (frogR + shape.getRadius(s));
+				double dx = frogX - m.getSphereX(s);
+				double dy = frogY - m.getSphereY(s);
+				
+				if (dx*dx + dy*dy < dist2) {
+					first = i;
+					hit = m;
+					hitSphere = s;
+					break;
+				}
+			}
+		}
+		return hit != null;
+	}
+	
+	public MovingEntity getHit() {
+		return hit;
+	}
+	
+	public int getHitSphere() {
+		return hitSphere;
+	}
+	
+	/**
+	 * @return - the frog's speed, the one of what it follows
+	 */
+	private double frogSpeed() {
+		MovingEntity f = frog.getFollowObject();
+		return f == null ? 0 : f.getVelocity().getX();
+	}
+	
+	/**
+	 * @return - x of the frog's sphere on the predicted line
+	 */
+	private double predictedX() {
+		return baseX + frogV * (now - baseTime);
+	}
+	
+	private boolean isOffLine() {
+		return frog.getSphereY(0) != baseY || frogSpeed() != frogV 
+				|| Math.abs(frog.getSphereX(0) - predictedX()) > SLACK / 2;
+	}
+	
+	private void rebuild(AbstractBodyLayer<MovingEntity> l) {
+		baseTime = now;
+		baseX = frog.getSphereX(0);
+		baseY = frog.getSphereY(0);
+		frogV = frogSpeed();
+		trajectory = frog.getTrajectory();
+		stale = false;
+		
+		heapSize = 0;
+		liveSize = 0;
+		seen = 0;
+		queue(l);
+	}
+	
+	/**
+	 * Queue the spans of the entities added since the last call
+	 */
+	private void queue(AbstractBodyLayer<MovingEntity> l) {
+		int n = l.size();
+		if (n > start.length) {
+			int capacity = Math.max(n, start.length * 2);
+			start = Arrays.copyOf(start, capacity);
+			end = Arrays.copyOf(end, capacity);
+			heap = Arrays.copyOf(heap, capacity);
+		}
+		
+		double frogX = predictedX();
+		double frogR = frog.getShape().getRadius(0);
+		
+		for (int i = seen; i < n; i++) {
+			MovingEntity m = l.get(i);
+			if (!m.isActive())
+				continue;
+			
+			// Position relative to the frog is p + rel * t
+			CollisionShape shape = m.getShape();
+			double rel = m.getVelocity().getX() - frogV;
+			double t0 = Double.POSITIVE_INFINITY;
+			double t1 = Double.NEGATIVE_INFINITY;
+			
+			for (int s = 0; s < shape.size(); s++) {
+				double reach = frogR + shape.getRadius(s);
+				double dy = baseY - m.getSphereY(s);
+				if (dy*dy >= reach*reach)
+					continue;
+				
+				double w = Math.sqrt(reach*reach - dy*dy) + SLACK;
+				double p = m.getSphereX(s) - frogX;
+				if (rel == 0) {
+					if (Math.abs(p) < w) {
+						t0 = Double.NEGATIVE_INFINITY;
+						t1 = Double.POSITIVE_INFINITY;
+					}
+					continue;
+				}
+				double a = (-w - p) / rel;
+				double b = (w - p) / rel;
+				t0 = Math.min(t0, Math.min(a, b));
+				t1 = Math.max(t1, Math.max(a, b));
+			}
+			
+			if (t1 < 0)
+				continue;
+			start[i] = now + t0;
+			end[i] = now + t1;
+			push(i);
+		}
+		seen = n;
+	}
+	
+	private void push(int i) {
+		int k = heapSize++;
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			if (start[heap[parent]] <= start[i])
+				break;
+			heap[k] = heap[parent];
+			k = parent;
+		}
+		heap[k] = i;
+	}
+	
+	private int pop() {
+		int top = heap[0];
+		int last = heap[--heapSize];
+		int k = 0;
+		while (true) {
+			int child = 2 * k + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && start[heap[child + 1]] < start[heap[child]])
+				child++;
+			if (start[last] <= start[heap[child]])
+				break;
+			heap[k] = heap[child];
+			k = child;
+		}
+		heap[k] = last;
+		return top;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import jig.engine.physics.AbstractBodyLayer;
+
+/**
+ * Lane partitioned traffic update for worlds with many lanes
+ * 
+ * Lanes never interact: a MovingEntityFactory only touches its own timers
+ * and random stream, and every entity only moves itself. Groups of lanes 
+ * spawn on the pool, the spawns are then added to the layer in the order
+ * the serial update adds them, and the layer is updated in slices. The 
+ * world ends up exactly as after the serial update, on any number of threads.
+ * 
+ * @author vitaliy
+ *
+ */
+class LaneUpdate {
+	
+	// Smallest piece of work worth a task of its own
+	static final int LANES_PER_TASK = 16;
+	static final int ENTITIES_PER_TASK = 256;
+	
+	private final FroggerWorld world;
+	private final ForkJoinPool pool;
+	
+	// What each lane spawned this cycle, null for nothing
+	private MovingEntity[] spawned = new MovingEntity[0];
+	
+	LaneUpdate(FroggerWorld w, ForkJoinPool p) {
+		world = w;
+		pool = p;
+	}
+	
+	/**
+	 * @return - true when a world with that many lanes gains from the pool
+	 */
+	public boolean pays(int lanes) {
+		return lanes >= FroggerWorld.PARALLEL_LANES && pool.getParallelism() > 1;
+	}
+	
+	/**
+	 * Advance every lane factory and add what they built to the world
+	 * 
+	 * @param lanes - number of lanes of the world
+	 * @param first - lane the serial update starts adding from, it wraps around
+	 */
+	public void spawn(int lanes, int first, long deltaMs) {
+		if (spawned.length != lanes)
+			spawned = new MovingEntity[lanes];
+		
+		pool.invoke(new Spawn(0, lanes, deltaMs));
+		
+		for (int i = 0; i < lanes; i++) {
+			int lane = (first + i) % lanes;
+			if (spawned[lane] != null) {
+				world.join(spawned[lane]);
+				spawned[lane] = null;
+			}
+		}
+	}
+	
+	/**
+	 * Same as l.update(deltaMs), in slices on the pool
+	 */
+	public void update(AbstractBodyLayer<MovingEntity> l, long deltaMs) {
+		pool.invoke(new Move(l, 0, l.size(), deltaMs));
+	}
+	
+	private class Spawn extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final int from;
+		private final int to;
+		private final long deltaMs;
+		
+		Spawn(int from, int to, long deltaMs) {
+			this.from = from;
+			this.to = to;
+			this.deltaMs = deltaMs;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= LANES_PER_TASK) {
+				for (int i = from; i < to; i++)
+					spawned[i] = world.spawnLane(i, deltaMs);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Spawn(from, mid, deltaMs), new Spawn(mid, to, deltaMs));
+		}
+	}
+	
+	private static class Move extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final AbstractBodyLayer<MovingEntity> layer;
+		private final int from;
+		private final int to;
+		private final long deltaMs;
+		
+		Move(AbstractBodyLayer<MovingEntity> l, int from, int to, long deltaMs) {
+			layer = l;
+			this.from = from;
+			this.to = to;
+			this.deltaMs = deltaMs;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= ENTITIES_PER_TASK) {
+				for (int i = from; i < to; i++)
+					layer.get(i).update(deltaMs);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Move(layer, from, mid, deltaMs), new Move(layer, mid, to, deltaMs));
+		}
+	}
+}
\ No newline at end of file
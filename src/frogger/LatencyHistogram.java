@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+/**
+ * Fixed size histogram of nanosecond latencies
+ * 
+ * Values are bucketed by power of two with 16 linear sub-buckets each, so
+ * every percentile is accurate to about 6% and recording never allocates.
+ * Not thread safe, keep one per thread and merge() them for a report.
+ * 
+ * @author vitaliy
+ *
+ */
+public class LatencyHistogram {
+	
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	
+	private final long[] counts = new long[64 * SUB_BUCKETS];
+	private long total = 0;
+	private long sum = 0;
+	private long max = 0;
+	
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts[index(nanos)]++;
+		total++;
+		sum += nanos;
+		if (nanos > max)
+			max = nanos;
+	}
+	
+	public void merge(LatencyHistogram h) {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] += h.counts[i];
+		total += h.total;
+		sum += h.sum;
+		if (h.max > max)
+			max = h.max;
+	}
+	
+	public void reset() {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = 0;
+		total = 0;
+		sum = 0;
+		max = 0;
+	}
+	
+	/**
+	 * @param p - percentile between 0 and 100
+	 * @return - upper bound of the bucket holding the percentile, in nanoseconds
+	 */
+	public long percentile(double p) {
+		if (total == 0)
+			return 0;
+		long rank = (long) Math.ceil(p / 100 * total);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(upperBound(i), max);
+		}
+		return max;
+	}
+	
+	public long getCount() {
+		return total;
+	}
+	
+	public long getMax() {
+		return max;
+	}
+	
+	public long getMean() {
+		return total == 0 ? 0 : sum / total;
+	}
+	
+	private static int index(long v) {
+		if (v < SUB_BUCKETS)
+			return (int) v;
+		int exp = 63 - Long.numberOfLeadingZeros(v);
+		int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+	
+	private static long upperBound(int i) {
+		if (i < SUB_BUCKETS)
+			return i;
+		int exp = i / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = i % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+	}
+}
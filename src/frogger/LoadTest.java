@@ -0,0 +1,356 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Capacity planning tool: runs many headless games for a fixed wall clock budget
+ * 
+ * Usage: LoadTest [-sessions N] [-threads N] [-seconds N] [-warmup N] [-tick ms]
+ *                 [-player random|up|cautious|auto|trace:FILE] [-seed N] [-record DIR]
+ *                 [-telemetry DIR] [-layout COLUMNSxRIVERxROAD] [-mode fast|realtime]
+ * 
+ * Sessions are spread over the worker threads and ticked round robin as fast
+ * as possible with a fixed deltaMs. Reports ticks per second, per tick latency
+ * percentiles, entity counts, allocation rate and garbage collection.
+ * 
+ * -mode realtime ticks every session once per tick period on a 
+ * SessionScheduler with -threads carriers instead, and reports how late the
+ * ticks started and how many were skipped.
+ * 
+ * Every session seeds its world and player from its own stream of the master
+ * seed (-seed, or -Dfrogger.seed), so the same seed plays the same games.
+ * 
+ * @author vitaliy
+ *
+ */
+public class LoadTest {
+	
+	private int sessions = 64;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int seconds = 30;
+	private int warmup = 5;
+	private long tickMs = 16;
+	private String playerName = "random";
+	private long seed = Long.getLong("frogger.seed", 1);
+	private String recordDir = null;
+	private String telemetryDir = null;
+	private boolean realtime = false;
+	
+	private volatile boolean measuring = false;
+	private volatile boolean running = true;
+	
+	/**
+	 * One worker thread and the sessions it owns
+	 */
+	private class Worker extends Thread {
+		final List<GameSession> owned = new ArrayList<>();
+		final LatencyHistogram latency = new LatencyHistogram();
+		long ticks = 0;
+		long entitySamples = 0;
+		long movingEntities = 0;
+		long particles = 0;
+		long allocatedAtStart = 0;
+		long allocated = 0;
+		
+		// What the worker's sessions threw, it stops the whole run
+		volatile Throwable failure = null;
+		
+		Worker(int id) {
+			super("load-test-" + id);
+			setDaemon(true);
+		}
+		
+		@Override
+		public void run() {
+			boolean counting = false;
+			try {
+				while (running) {
+					if (measuring && !counting) {
+						counting = true;
+						allocatedAtStart = PerfOverlay.allocatedBytes();
+					}
+					for (GameSession s : owned) {
+						long t0 = System.nanoTime();
+						s.update(tickMs);
+						long dt = System.nanoTime() - t0;
+						if (!counting)
+							continue;
+						
+						latency.record(dt);
+						if ((++ticks & 63) == 0) {
+							entitySamples++;
+							movingEntities += s.getWorld().getMovingObjectsLayer().size();
+							particles += s.getWorld().getParticleLayer().size();
+						}
+					}
+				}
+			} catch (Throwable t) {
+				failure = t;
+				running = false;
+			}
+			if (counting)
+				allocated = PerfOverlay.allocatedBytes() - allocatedAtStart;
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		LoadTest t = new LoadTest();
+		t.parse(args);
+		t.run();
+	}
+	
+	private void parse(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String v = args[i + 1];
+			switch(args[i]) {
+			case "-sessions": sessions = Integer.parseInt(v); break;
+			case "-threads":  threads = Integer.parseInt(v); break;
+			case "-seconds":  seconds = Integer.parseInt(v); break;
+			case "-warmup":   warmup = Integer.parseInt(v); break;
+			case "-tick":     tickMs = Long.parseLong(v); break;
+			case "-player":   playerName = v; break;
+			case "-seed":     seed = Long.parseLong(v); break;
+			case "-record":   recordDir = v; break;
+			case "-telemetry": telemetryDir = v; break;
+			case "-layout":   WorldLayout.setCurrent(WorldLayout.parse(v)); break;
+			case "-mode":     realtime = v.equals("realtime"); break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+	}
+	
+	private SyntheticPlayer newPlayer(long playerSeed) throws IOException {
+		if (playerName.startsWith("trace:"))
+			return SyntheticPlayer.Replay.load(playerName.substring(6));
+		switch(playerName) {
+		case "up":
+			return new SyntheticPlayer.AlwaysUp();
+		case "cautious":
+			return new SyntheticPlayer.Cautious();
+		case "auto":
+			return new SyntheticPlayer.Auto();
+		default:
+			return new SyntheticPlayer.RandomWalk(playerSeed);
+		}
+	}
+	
+	public void run() throws Exception {
+		FroggerWorld.initHeadless();
+		
+		System.out.printf("Starting %d sessions on %d threads, player %s, tick %d ms, seed %d%s%n", 
+				sessions, threads, playerName, tickMs, seed, realtime ? ", real time" : "");
+		
+		TelemetryWriter telemetry = null;
+		if (telemetryDir != null) {
+			telemetry = new TelemetryWriter(Paths.get(telemetryDir));
+			telemetry.start();
+		}
+		
+		Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++)
+			workers[i] = new Worker(i);
+		for (int i = 0; i < sessions; i++) {
+			// Session i plays stream i of the master seed, whatever thread runs it
+			SeedSequence seeds = new SeedSequence(seed).split(i);
+			GameSession s = new GameSession(newPlayer(seeds.getAsLong()), seeds.getAsLong());
+			if (recordDir != null)
+				s.record(new ReplayWriter(Paths.get(recordDir, "session-" + i + ReplayWriter.EXTENSION), s.getWorld()));
+			if (telemetry != null)
+				s.logTo(telemetry, i, 1024);
+			workers[i % threads].owned.add(s);
+		}
+		
+		if (realtime) {
+			runRealtime(workers, telemetry);
+			return;
+		}
+		
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		
+		for (Worker w : workers)
+			w.start();
+		Thread.sleep(warmup * 1000L);
+		
+		long gcCount0 = gcCount();
+		long gcTime0 = gcTime();
+		long t0 = System.nanoTime();
+		long heapMax = 0;
+		measuring = true;
+		
+		long end = t0 + seconds * 1000000000L;
+		while (running && System.nanoTime() < end) {
+			Thread.sleep(100);
+			heapMax = Math.max(heapMax, memory.getHeapMemoryUsage().getUsed());
+		}
+		
+		running = false;
+		for (Worker w : workers)
+			w.join();
+		double elapsed = (System.nanoTime() - t0) / 1e9;
+		
+		LatencyHistogram all = new LatencyHistogram();
+		long ticks = 0;
+		long samples = 0;
+		long moving = 0;
+		long particles = 0;
+		long allocated = 0;
+		int games = 0;
+		List<Throwable> failures = new ArrayList<>();
+		for (Worker w : workers) {
+			if (w.failure != null)
+				failures.add(w.failure);
+			all.merge(w.latency);
+			ticks += w.ticks;
+			samples += w.entitySamples;
+			moving += w.movingEntities;
+			particles += w.particles;
+			allocated += w.allocated;
+			for (GameSession s : w.owned) {
+				games += s.getGamesPlayed();
+				s.close();
+			}
+		}
+		
+		invalidate(failures);
+		System.out.printf("Measured %.1f s, %d ticks, %.0f ticks/s (%.1f x real time per session)%n",
+				elapsed, ticks, ticks / elapsed, ticks / elapsed / sessions * tickMs / 1000);
+		System.out.printf("Tick latency us: mean %.1f p50 %.1f p90 %.1f p99 %.1f p99.9 %.1f max %.1f%n",
+				all.getMean() / 1e3, all.percentile(50) / 1e3, all.percentile(90) / 1e3,
+				all.percentile(99) / 1e3, all.percentile(99.9) / 1e3, all.getMax() / 1e3);
+		if (samples > 0)
+			System.out.printf("Entities per session: %.1f moving, %.1f particles%n",
+					(double) moving / samples, (double) particles / samples);
+		System.out.printf("Games started: %d%n", games);
+		System.out.printf("Heap: max used %.1f MB, allocated %.1f MB/s, %.0f bytes/tick%n",
+				heapMax / 1048576.0, allocated / elapsed / 1048576.0, ticks == 0 ? 0.0 : (double) allocated / ticks);
+		System.out.printf("GC: %d collections, %d ms total%n", 
+				gcCount() - gcCount0, gcTime() - gcTime0);
+		
+		if (telemetry != null) {
+			long dropped = telemetry.getDropped();
+			telemetry.close();
+			System.out.printf("Telemetry: %d events written, %d dropped%n", 
+					telemetry.getWritten(), dropped);
+		}
+		
+		if (!failures.isEmpty())
+			throw new IllegalStateException("Load test failed", failures.get(0));
+	}
+	
+	/**
+	 * Tick the sessions of the workers in real time on a SessionScheduler
+	 */
+	private void runRealtime(Worker[] workers, TelemetryWriter telemetry) throws Exception {
+		SessionScheduler scheduler = new SessionScheduler(threads);
+		for (Worker w : workers)
+			for (GameSession s : w.owned)
+				scheduler.add(s, tickMs);
+		
+		scheduler.setRecording(false);
+		scheduler.start();
+		Thread.sleep(warmup * 1000L);
+		
+		long gcCount0 = gcCount();
+		long gcTime0 = gcTime();
+		long t0 = System.nanoTime();
+		scheduler.setRecording(true);
+		Thread.sleep(seconds * 1000L);
+		scheduler.stop();
+		double elapsed = (System.nanoTime() - t0) / 1e9;
+		
+		LatencyHistogram all = new LatencyHistogram();
+		long ticks = 0;
+		long skipped = 0;
+		long worst = 0;
+		int games = 0;
+		List<Throwable> failures = new ArrayList<>();
+		for (SessionScheduler.Handle h : scheduler.getSessions()) {
+			if (h.getFailure() != null)
+				failures.add(h.getFailure());
+			all.merge(h.getLateness());
+			ticks += h.getTicks();
+			skipped += h.getSkipped();
+			worst = Math.max(worst, h.getLateness().percentile(99));
+			games += h.getSession().getGamesPlayed();
+			h.getSession().close();
+		}
+		
+		invalidate(failures);
+		System.out.printf("Measured %.1f s, %d ticks, %.0f ticks/s (%.2f x real time per session), %d skipped%n",
+				elapsed, ticks, ticks / elapsed, ticks / elapsed / sessions * tickMs / 1000, skipped);
+		System.out.printf("Tick lateness us: mean %.1f p50 %.1f p90 %.1f p99 %.1f p99.9 %.1f max %.1f%n",
+				all.getMean() / 1e3, all.percentile(50) / 1e3, all.percentile(90) / 1e3,
+				all.percentile(99) / 1e3, all.percentile(99.9) / 1e3, all.getMax() / 1e3);
+		System.out.printf("Worst session p99 lateness us: %.1f%n", worst / 1e3);
+		System.out.printf("Games started: %d%n", games);
+		System.out.printf("GC: %d collections, %d ms total%n", 
+				gcCount() - gcCount0, gcTime() - gcTime0);
+		
+		if (telemetry != null) {
+			long dropped = telemetry.getDropped();
+			telemetry.close();
+			System.out.printf("Telemetry: %d events written, %d dropped%n", 
+					telemetry.getWritten(), dropped);
+		}
+		
+		if (!failures.isEmpty())
+			throw new IllegalStateException("Load test failed", failures.get(0));
+	}
+	
+	/**
+	 * Mark the report that follows as invalid when a session threw
+	 */
+	private static void invalidate(List<Throwable> failures) {
+		if (failures.isEmpty())
+			return;
+		System.out.printf("INVALID RUN: %d failure(s), the figures below are incomplete%n", failures.size());
+		for (Throwable t : failures)
+			t.printStackTrace(System.out);
+	}
+	
+	private static long gcCount() {
+		long n = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			n += Math.max(0, gc.getCollectionCount());
+		return n;
+	}
+	
+	private static long gcTime() {
+		long n = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			n += Math.max(0, gc.getCollectionTime());
+		return n;
+	}
+}
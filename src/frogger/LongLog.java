@@ -30,19 +30,10 @@ import jig.engine.util.Vector2D;
 public class LongLog extends MovingEntity {
 	
 	public static final int LENGTH = 32*4;
-	public static final String COLSMALL = "colSmall";
 	
 	public LongLog (Vector2D pos, Vector2D v) {
-		super(Main.SPRITE_SHEET + "#longlog");
+		super(SpriteKind.LONGLOG);
 		position = pos;
-		Vector2D posSphere1 = position;
-		Vector2D posSphere2 = new Vector2D(position.getX()+32*1, position.getY());
-		Vector2D posSphere3 = new Vector2D(position.getX()+32*2, position.getY());
-		Vector2D posSphere4 = new Vector2D(position.getX()+32*3, position.getY());
-		collisionObjects.add(new CollisionObject(COLSMALL,posSphere1));
-		collisionObjects.add(new CollisionObject(COLSMALL,posSphere2));
-		collisionObjects.add(new CollisionObject(COLSMALL,posSphere3));
-		collisionObjects.add(new CollisionObject(COLSMALL,posSphere4));
 		velocity = v;
 		
 		if (v.getX() < 0)
@@ -25,21 +25,24 @@
 
 package frogger;
 
+import java.awt.Component;
+import java.awt.Window;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowEvent;
+import java.awt.event.WindowFocusListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import jig.engine.ImageResource;
-import jig.engine.PaintableCanvas;
 import jig.engine.RenderingContext;
 import jig.engine.ResourceFactory;
-import jig.engine.PaintableCanvas.JIGSHAPE;
 import jig.engine.hli.ImageBackgroundLayer;
 import jig.engine.hli.StaticScreenGame;
-import jig.engine.physics.AbstractBodyLayer;
-import jig.engine.util.Vector2D;
 
 public class Main extends StaticScreenGame {
-	static final int WORLD_WIDTH = (13*32);
-	static final int WORLD_HEIGHT = (14*32);
-	private static final Vector2D FROGGER_START = new Vector2D(6*32,WORLD_HEIGHT-32);
 	
 	static final String RSC_PATH = "resources/";
 	static final String SPRITE_SHEET = RSC_PATH + "frogger_sprites.png";
@@ -48,30 +51,56 @@ public class Main extends StaticScreenGame {
     static final int STARTING_LEVEL     = 1;
 	static final int DEFAULT_LEVEL_TIME = 60;
 	
-	private FroggerCollisionDetection frogCol;
-	private Frogger frog;
-	private AudioEfx audiofx;
+	private FroggerWorld world;
 	private FroggerUI ui;
-	private WindGust wind;
-	private HeatWave hwave;
-	private GoalManager goalmanager;
 	
-	private AbstractBodyLayer<MovingEntity> movingObjectsLayer;
-	private AbstractBodyLayer<MovingEntity> particleLayer;
+	private ImageBackgroundLayer backgroundLayer;
 	
-	private MovingEntityFactory roadLine1;
-	private MovingEntityFactory roadLine2;
-	private MovingEntityFactory roadLine3;
-	private MovingEntityFactory roadLine4;
-	private MovingEntityFactory roadLine5;
+	private ScoreStore scores;
+	private String player;
 	
-	private MovingEntityFactory riverLine1;
-	private MovingEntityFactory riverLine2;
-	private MovingEntityFactory riverLine3;
-	private MovingEntityFactory riverLine4;
-	private MovingEntityFactory riverLine5;
+	private SpectatorServer spectators;
 	
-	private ImageBackgroundLayer backgroundLayer;
+	// Paces the game loop instead of JIG's GameClock, see run()
+	private final FramePacer pacer = FramePacer.fromProperties();
+	private final int playFps = pacer.getFps();
+	
+	// Idle policy: menus tick and render slower, the level summary is drawn
+	// once and refreshed now and then, nothing runs without window focus
+	static final int MENU_FPS = Integer.getInteger("frogger.menuFps", 20);
+	static final int IDLE_FPS = Integer.getInteger("frogger.idleFps", 10);
+	static final long REFRESH_NANOS = 1000000000L;
+	private final Object focus = new Object();
+	private volatile boolean focused = true;
+	
+	// Arrow keys as events from the AWT thread, null without a window to 
+	// listen to, the keyboard is polled then. Input latency runs from the
+	// key event to the first displayed frame of the move it started.
+	private InputQueue keyEvents = null;
+	private final LatencyHistogram inputLatency = new LatencyHistogram();
+	private long shownMove = 0;
+	
+	// F3 shows frame and tick times, entity counts, allocation and GC pauses,
+	// -Dfrogger.overlay=true starts with it shown
+	private final PerfOverlay overlay = new PerfOverlay();
+	private boolean overlayKeyDown = false;
+	
+	// Sheds particles and ambient sounds when frames run over budget,
+	// -Dfrogger.governor=false keeps full quality
+	private final QualityGovernor quality = new QualityGovernor();
+	
+	// Recording of the game being played, see recordedKeyboardHandler()
+	private Path replayDir = null;
+	private ReplayWriter replay = null;
+	private long replayGame;
+	private int replayPart;
+	
+	private FrameCapture capture;
+	private final FrameCapture.Scene scene = new FrameCapture.Scene() {
+		public void render(RenderingContext rc) {
+			renderScene(rc);
+		}
+	};
 	
     static final int GAME_INTRO        = 0;
     static final int GAME_PLAY         = 1;
@@ -79,171 +108,210 @@ public class Main extends StaticScreenGame {
     static final int GAME_INSTRUCTIONS = 3;
     static final int GAME_OVER         = 4;
     
-	protected int gameState = GAME_INTRO;
-	protected int gameLevel = STARTING_LEVEL;
-	
-    private static int gameLives    = FROGGER_LIVES;
-    private static int gameScore    = 0;
-    
-    private static int levelTimer = DEFAULT_LEVEL_TIME;
-    
     private boolean spaceHasBeenReleased = false;
-	private boolean keyPressed = false;
-	private boolean listenInput = true;
 	
     /**
 	 * Initialize game objects
 	 */
 	public Main () {
 		
-		super(WORLD_WIDTH, WORLD_HEIGHT, false);
+		super(WorldLayout.current().getWidth(), WorldLayout.current().getHeight(), false);
 		
 		gameframe.setTitle("Frogger");
 		
 		ResourceFactory.getFactory().loadResources(RSC_PATH, "resources.xml");
+		SpriteKind.resolveAll();
+		AudioEfx.loadClips();
 
 		ImageResource bkg = ResourceFactory.getFactory().getFrames(
 				SPRITE_SHEET + "#background").get(0);
-		backgroundLayer = new ImageBackgroundLayer(bkg, WORLD_WIDTH,
-				WORLD_HEIGHT, ImageBackgroundLayer.TILE_IMAGE);
-		
-		// Used in CollisionObject, basically 2 different collision spheres
-		// 30x30 is a large sphere (sphere that fits inside a 30x30 pixel rectangle)
-		//  4x4 is a tiny sphere
-		PaintableCanvas.loadDefaultFrames("col", 30, 30, 2, JIGSHAPE.RECTANGLE, null);
-		PaintableCanvas.loadDefaultFrames("colSmall", 4, 4, 2, JIGSHAPE.RECTANGLE, null);
-			
-		frog = new Frogger(this);
-		frogCol = new FroggerCollisionDetection(frog);
-		audiofx = new AudioEfx(frogCol,frog);
-		ui = new FroggerUI(this);
-		wind = new WindGust();
-		hwave = new HeatWave();
-		goalmanager = new GoalManager();
-		
-		movingObjectsLayer = new AbstractBodyLayer.IterativeUpdate<>();
-		particleLayer = new AbstractBodyLayer.IterativeUpdate<>();
-		
-		initializeLevel(1);
-	}
-	
-	
-	public void initializeLevel(int level) {
-
-		/* dV is the velocity multiplier for all moving objects at the current game level */
-		double dV = level*0.05 + 1;
-		
-		movingObjectsLayer.clear();
-		
-		/* River Traffic */
-		riverLine1 = new MovingEntityFactory(new Vector2D(-(32*3),2*32), 
-				new Vector2D(0.06*dV,0)); 
-		
-		riverLine2 = new MovingEntityFactory(new Vector2D(Main.WORLD_WIDTH,3*32),  
-				new Vector2D(-0.04*dV,0)); 
-		
-		riverLine3 = new MovingEntityFactory(new Vector2D(-(32*3),4*32), 
-				new Vector2D(0.09*dV,0)); 
-		
-		riverLine4 = new MovingEntityFactory(new Vector2D(-(32*4),5*32),  
-				new Vector2D(0.045*dV,0));
-		
-		riverLine5 = new MovingEntityFactory(new Vector2D(Main.WORLD_WIDTH,6*32), 
-				new Vector2D(-0.045*dV,0));
-		
-		/* Road Traffic */
-		roadLine1 = new MovingEntityFactory(new Vector2D(Main.WORLD_WIDTH, 8*32), 
-				new Vector2D(-0.1*dV, 0)); 
-		
-		roadLine2 = new MovingEntityFactory(new Vector2D(-(32*4), 9*32), 
-				new Vector2D(0.08*dV, 0)); 
+		backgroundLayer = new ImageBackgroundLayer(bkg, WorldLayout.current().getWidth(),
+				WorldLayout.current().getHeight(), ImageBackgroundLayer.TILE_IMAGE);
+		
+		world = new FroggerWorld(true);
+		ui = new FroggerUI(world);
+		ui.setOverlay(overlay);
+		if (!"false".equals(System.getProperty("frogger.governor")))
+			world.setQuality(quality);
+		overlay.setVisible(Boolean.getBoolean("frogger.overlay"));
+		
+		// -Dfrogger.telemetry=DIR logs game events to DIR
+		String telemetryDir = System.getProperty("frogger.telemetry");
+		if (telemetryDir != null)
+			startTelemetry(telemetryDir);
+		
+		// -Dfrogger.scores=DIR keeps high scores in DIR, -Dfrogger.player=NAME
+		String scoresDir = System.getProperty("frogger.scores");
+		if (scoresDir != null)
+			openScores(scoresDir);
+		
+		// -Dfrogger.spectate=PORT broadcasts the game to spectators
+		String spectatePort = System.getProperty("frogger.spectate");
+		if (spectatePort != null) {
+			try {
+				spectators = new SpectatorServer(Integer.parseInt(spectatePort));
+				spectators.start();
+			} catch (IOException e) {
+				System.err.println("Spectators disabled: " + e);
+			}
+		}
 		
-		roadLine3 = new MovingEntityFactory(new Vector2D(Main.WORLD_WIDTH, 10*32),
-			    new Vector2D(-0.12*dV, 0)); 
+		// -Dfrogger.replays=DIR records every game to DIR
+		String replays = System.getProperty("frogger.replays");
+		if (replays != null)
+			startReplays(replays);
 		
-		roadLine4 = new MovingEntityFactory(new Vector2D(-(32*4), 11*32),
-				new Vector2D(0.075*dV, 0));
+		// -Dfrogger.capture=DIR records frames, see startCapture()
+		String captureDir = System.getProperty("frogger.capture");
+		if (captureDir != null)
+			startCapture(captureDir);
 		
-		roadLine5 = new MovingEntityFactory(new Vector2D(Main.WORLD_WIDTH, 12*32),
-				new Vector2D(-0.05*dV, 0)); 
+		if (gameframe instanceof Component) {
+			keyEvents = new InputQueue(256);
+			((Component) gameframe).addKeyListener(keyEvents);
+		}
 		
-		goalmanager.init(level);
-		for (Goal g : goalmanager.get()) {
-			movingObjectsLayer.add(g);
+		// -Dfrogger.pauseUnfocused=false keeps playing in the background
+		if (gameframe instanceof Window && 
+				!"false".equals(System.getProperty("frogger.pauseUnfocused"))) {
+			((Window) gameframe).addWindowFocusListener(new WindowFocusListener() {
+				public void windowGainedFocus(WindowEvent e) {
+					synchronized (focus) {
+						focused = true;
+						focus.notifyAll();
+					}
+				}
+				
+				public void windowLostFocus(WindowEvent e) {
+					focused = false;
+				}
+			});
 		}
-			
-		/* Build some traffic before game starts buy running MovingEntityFactories for fews cycles */
-		for (int i=0; i<500; i++)
-			cycleTraffic(10);
 	}
 	
-	
 	/**
-	 * Populate movingObjectLayer with a cycle of cars/trucks, moving tree logs, etc
-	 * 
-	 * @param deltaMs
+	 * Frame capture at -Dfrogger.capture.fps (30), as a PNG sequence or 
+	 * with -Dfrogger.capture.format=frcv into one file
 	 */
-	public void cycleTraffic(long deltaMs) {
-		roadTrafficUpdates(deltaMs);
-		
-		riverTrafficUpdates(deltaMs);
-	    
-	    // Do Wind
-		MovingEntity mWind = wind.genParticles(gameLevel);
-	    if (mWind != null) particleLayer.add(mWind);
-	    
-	    // HeatWave
-	    MovingEntity mWave = hwave.genParticles(frog.getCenterPosition());
-	    if (mWave != null) particleLayer.add(mWave);
-	        
-	    movingObjectsLayer.update(deltaMs);
-	    particleLayer.update(deltaMs);
+	private void startCapture(String dir) {
+		int fps = Integer.getInteger("frogger.capture.fps", FrameCapture.DEFAULT_FPS);
+		FrameCapture.Format format = FrameCapture.Format.valueOf(
+				System.getProperty("frogger.capture.format", "png").toUpperCase());
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		
+		try {
+			capture = new FrameCapture(Paths.get(dir), format, world.getLayout().getWidth(), 
+					world.getLayout().getHeight(), fps, threads);
+		} catch (IOException e) {
+			System.err.println("Capture disabled: " + e);
+			return;
+		}
+		
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					capture.close();
+				} catch (IOException e) {
+					// nothing left to do when exiting
+				}
+			}
+		});
 	}
 	
-	private void roadTrafficUpdates(long deltaMs) {
-		/* Road traffic updates */
-		roadLine1.update(deltaMs);
-		MovingEntity mRoadLine1 = roadLine1.buildVehicle();
-	    if (mRoadLine1 != null) movingObjectsLayer.add(mRoadLine1);
-		
-		roadLine2.update(deltaMs);
-		MovingEntity mRoadLine2 = roadLine2.buildVehicle();
-	    if (mRoadLine2 != null) movingObjectsLayer.add(mRoadLine2);
-	    
-		roadLine3.update(deltaMs);
-		MovingEntity mRoadLine3 = roadLine3.buildVehicle();
-	    if (mRoadLine3 != null) movingObjectsLayer.add(mRoadLine3);
-	    
-		roadLine4.update(deltaMs);
-		MovingEntity mRoadLine4 = roadLine4.buildVehicle();
-	    if (mRoadLine4 != null) movingObjectsLayer.add(mRoadLine4);
-
-		roadLine5.update(deltaMs);
-		MovingEntity mRoadLine5 = roadLine5.buildVehicle();
-	    if (mRoadLine5 != null) movingObjectsLayer.add(mRoadLine5);
+	/**
+	 * One replay file per game, a new part whenever cheats or the autopilot
+	 * take over for a moment, ReplayReader plays them back
+	 */
+	private void startReplays(String dir) {
+		replayDir = Paths.get(dir);
+		try {
+			Files.createDirectories(replayDir);
+		} catch (IOException e) {
+			System.err.println("Replays disabled: " + e);
+			replayDir = null;
+			return;
+		}
+		
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				stopReplay();
+			}
+		});
 	}
 	
-	private void riverTrafficUpdates(long deltaMs) {
-		/* River traffic updates */
-		riverLine1.update(deltaMs);
-		MovingEntity mRiverLine1 = riverLine1.buildShortLogWithTurtles(40);
-	    if (mRiverLine1 != null) movingObjectsLayer.add(mRiverLine1);
-		
-		riverLine2.update(deltaMs);
-		MovingEntity mRiverLine2 = riverLine2.buildLongLogWithCrocodile(30);
-	    if (mRiverLine2 != null) movingObjectsLayer.add(mRiverLine2);
+	private void startReplay(boolean newGame) {
+		stopReplay();
+		if (newGame) {
+			replayGame = System.currentTimeMillis();
+			replayPart = 0;
+		}
 		
-		riverLine3.update(deltaMs);
-		MovingEntity mRiverLine3 = riverLine3.buildShortLogWithTurtles(50);
-	    if (mRiverLine3 != null) movingObjectsLayer.add(mRiverLine3);
+		Path file = replayDir.resolve(String.format("game-%d-%02d", replayGame, replayPart++) + ReplayWriter.EXTENSION);
+		try {
+			replay = new ReplayWriter(file, world);
+		} catch (IOException e) {
+			System.err.println("Game not recorded: " + e);
+		}
+	}
+	
+	private synchronized void stopReplay() {
+		if (replay == null)
+			return;
+		try {
+			replay.close();
+		} catch (IOException e) {
+			System.err.println("Replay incomplete: " + e);
+		}
+		replay = null;
+	}
+	
+	private void openScores(String dir) {
+		player = System.getProperty("frogger.player", "FROGGER");
+		try {
+			scores = ScoreStore.open(Paths.get(dir));
+		} catch (IOException e) {
+			System.err.println("High scores disabled: " + e);
+			return;
+		}
 		
-		riverLine4.update(deltaMs);
-		MovingEntity mRiverLine4 = riverLine4.buildLongLogWithCrocodile(20);
-	    if (mRiverLine4 != null) movingObjectsLayer.add(mRiverLine4);
-
-		riverLine5.update(deltaMs);
-		MovingEntity mRiverLine5 = riverLine5.buildShortLogWithTurtles(10);
-	    if (mRiverLine5 != null) movingObjectsLayer.add(mRiverLine5);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					scores.close();
+				} catch (IOException e) {
+					// the log already has every score, only the checkpoint is lost
+				}
+			}
+		});
+	}
+	
+	private void submitScore() {
+		try {
+			scores.submit(player, world.getGameScore(), world.getGameLevel());
+		} catch (IOException e) {
+			System.err.println("Could not save score: " + e);
+		}
+	}
+	
+	private void startTelemetry(String dir) {
+		final TelemetryWriter writer = new TelemetryWriter(Paths.get(dir));
+		writer.start();
+		world.setTelemetry(writer.newSink(0, 4096));
+		
+		// the game loop ends with System.exit(), flush the log on the way out
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					// nothing left to do when exiting
+				}
+			}
+		});
 	}
 	
 	/**
@@ -252,75 +320,115 @@ public class Main extends StaticScreenGame {
 	public void froggerKeyboardHandler() {
  		keyboard.poll();
 		
- 		boolean keyReleased = false;
-        boolean downPressed = keyboard.isPressed(KeyEvent.VK_DOWN);
-        boolean upPressed = keyboard.isPressed(KeyEvent.VK_UP);
-		boolean leftPressed = keyboard.isPressed(KeyEvent.VK_LEFT);
-		boolean rightPressed = keyboard.isPressed(KeyEvent.VK_RIGHT);
-		
 		enableDisableCheating();
+		enableDisableAutopilot();
+		
+		if (keyEvents != null) {
+			while (keyEvents.poll())
+				if (keyEvents.isPressed())
+					world.press(keyEvents.getKey(), keyEvents.getStamp());
+		}
+		else {
+			world.input(arrowKeys());
+		}
+		
+		if (keyboard.isPressed(KeyEvent.VK_ESCAPE))
+			world.setGameState(GAME_INTRO);
+	}
+	
+	/**
+	 * Keyboard of a recorded game, polled, since key events can't be recorded
+	 * 
+	 * Ticks go in the order of GameSession.step() so that the replay takes 
+	 * the same path: a tick is recorded before the space bar continues to
+	 * the next level, and level summary ticks without it change nothing and
+	 * are left out. Cheats and the autopilot aren't part of a replay, the
+	 * recording goes on in a new part starting from where they left the game.
+	 */
+	private void recordedKeyboardHandler(long deltaMs) {
+		keyboard.poll();
 		
-		keyStrokesCheck(keyReleased, downPressed, upPressed, leftPressed, rightPressed);
+		if (world.getGameState() == GAME_FINISH_LEVEL) {
+			if (!keyboard.isPressed(KeyEvent.VK_SPACE))
+				return;
+			int keys = arrowKeys();
+			replay.tick(keys, deltaMs);
+			world.nextLevel();
+			world.input(keys);
+			return;
+		}
 		
+		boolean changed = enableDisableCheating();
+		changed |= enableDisableAutopilot();
+		
+		if (keyboard.isPressed(KeyEvent.VK_ESCAPE)) {
+			stopReplay();
+			world.setGameState(GAME_INTRO);
+			return;
+		}
+		
+		if (changed)
+			startReplay(false);
+		recordInput(deltaMs);
+	}
+	
+	private void recordInput(long deltaMs) {
+		int keys = arrowKeys();
+		if (replay != null)
+			replay.tick(keys, deltaMs);
+		world.input(keys);
 	}
 	
-	private void enableDisableCheating() {
+	private int arrowKeys() {
+		int keys = 0;
+		if (keyboard.isPressed(KeyEvent.VK_DOWN))
+			keys |= FroggerWorld.KEY_DOWN;
+		if (keyboard.isPressed(KeyEvent.VK_UP))
+			keys |= FroggerWorld.KEY_UP;
+		if (keyboard.isPressed(KeyEvent.VK_LEFT))
+			keys |= FroggerWorld.KEY_LEFT;
+		if (keyboard.isPressed(KeyEvent.VK_RIGHT))
+			keys |= FroggerWorld.KEY_RIGHT;
+		return keys;
+	}
+	
+	/**
+	 * @return - true if cheating or the level changed
+	 */
+	private boolean enableDisableCheating() {
+		boolean cheating = world.getFrog().isCheating();
+		
 		// Enable/Disable cheating
 				if (keyboard.isPressed(KeyEvent.VK_C))
-					frog.setCheating(true);
+					world.getFrog().setCheating(true);
 				if (keyboard.isPressed(KeyEvent.VK_V))
-					frog.setCheating(false);
+					world.getFrog().setCheating(false);
 				if (keyboard.isPressed(KeyEvent.VK_0)) {
-					gameLevel = 10;
-					initializeLevel(gameLevel);
+					world.skipToLevel(10);
+					return true;
 				}
+		return world.getFrog().isCheating() != cheating;
 	}
 	
-	private void keyStrokesCheck(boolean keyReleased, boolean downPressed, boolean upPressed,
-			boolean leftPressed, boolean rightPressed) {
-		/*
-		 * This logic checks for key strokes.
-		 * It registers a key press, and ignores all other key strokes
-		 * until the first key has been released
-		 */
-		
-		if (downPressed || upPressed || leftPressed || rightPressed)
-			keyPressed = true;
-		else if (keyPressed)
-			keyReleased = true;
-		
-		
-		listenInputMethod(downPressed, upPressed, leftPressed, rightPressed);
-		
-		if (keyReleased) {
-			listenInput = true;
-			keyPressed = false;
-		}
-		
-		if (keyboard.isPressed(KeyEvent.VK_ESCAPE))
-			gameState = GAME_INTRO;
+	private void toggleOverlay() {
+		boolean down = keyboard.isPressed(KeyEvent.VK_F3);
+		if (down && !overlayKeyDown)
+			overlay.setVisible(!overlay.isVisible());
+		overlayKeyDown = down;
 	}
 	
-	private void listenInputMethod(boolean downPressed, boolean upPressed,
-			boolean leftPressed, boolean rightPressed) {
-		if (listenInput) {
-		    if (downPressed) {
-		    	frog.moveDown();
-		    }
-		    if (upPressed) {
-		    	frog.moveUp();
-		    }
-		    if (leftPressed) {
-		    	frog.moveLeft();
-		    }
-	 	    if (rightPressed) {
-	 	    	frog.moveRight();
-	 	    }
-	 	    
-	 	    if (keyPressed) {
-	 	    	listenInput = false;
-	 	    }
-		}
+	/**
+	 * @return - true if the autopilot was switched
+	 */
+	private boolean enableDisableAutopilot() {
+		boolean on = world.autopilotOn;
+		
+		// Enable/Disable the autopilot, for demo kiosks
+		if (keyboard.isPressed(KeyEvent.VK_A))
+			world.autopilotOn = true;
+		if (keyboard.isPressed(KeyEvent.VK_Q))
+			world.autopilotOn = false;
+		return world.autopilotOn != on;
 	}
 	
 	/**
@@ -338,25 +446,18 @@ public class Main extends StaticScreenGame {
 			return;
 		
 		if (keyboard.isPressed(KeyEvent.VK_SPACE)) {
-			switch (gameState) {
+			switch (world.getGameState()) {
 			case GAME_INSTRUCTIONS:
 			case GAME_OVER:
-				gameState = GAME_INTRO;
+				world.setGameState(GAME_INTRO);
 				spaceHasBeenReleased = false;
 				break;
 			default:
-				setGameLives(FROGGER_LIVES);
-				setGameScore(0);
-				gameLevel = STARTING_LEVEL;
-				setLevelTimer(DEFAULT_LEVEL_TIME);
-				frog.setPosition(getFroggerStart());
-				gameState = GAME_PLAY;
-				audiofx.playGameMusic();
-				initializeLevel(gameLevel);			
+				world.startGame();
 			}
 		}
 		if (keyboard.isPressed(KeyEvent.VK_H))
-			gameState = GAME_INSTRUCTIONS;
+			world.setGameState(GAME_INSTRUCTIONS);
 	}
 	
 	/**
@@ -365,9 +466,7 @@ public class Main extends StaticScreenGame {
 	public void finishLevelKeyboardHandler() {
 		keyboard.poll();
 		if (keyboard.isPressed(KeyEvent.VK_SPACE)) {
-			gameState = GAME_PLAY;
-			audiofx.playGameMusic();
-			initializeLevel(++gameLevel);
+			world.nextLevel();
 		}
 	}
 	
@@ -376,59 +475,54 @@ public class Main extends StaticScreenGame {
 	 * w00t
 	 */
 	public void update(long deltaMs) {
-		switch(gameState) {
+		int before = world.getGameState();
+		
+		if (replay != null)
+			recordedKeyboardHandler(deltaMs);
+		else switch(before) {
 		default:
 		case GAME_PLAY:
 			froggerKeyboardHandler();
-			wind.update(deltaMs);
-			hwave.update(deltaMs);
-			frog.update(deltaMs);
-			audiofx.update(deltaMs);
-			ui.update(deltaMs);
-
-			cycleTraffic(deltaMs);
-			frogCol.testCollision(movingObjectsLayer);
-			
-			// Wind gusts work only when Frogger is on the river
-			if (frogCol.isInRiver())
-				wind.start(gameLevel);		
-			wind.perform(frog, gameLevel, deltaMs);
-			
-			// Do the heat wave only when Frogger is on hot pavement
-			if (frogCol.isOnRoad())
-				hwave.start(frog, gameLevel);
-			hwave.perform(frog, gameLevel);
-			
-	
-			if (!frog.isAlive())
-				particleLayer.clear();
-			
-			goalmanager.update(deltaMs);
-			
-			if (goalmanager.getUnreached().isEmpty()) {
-				gameState = GAME_FINISH_LEVEL;
-				audiofx.playCompleteLevel();
-				particleLayer.clear();
-			}
-			
-			if (getGameLives() < 1) {
-				gameState = GAME_OVER;
-			}
-			
 			break;
 		
 		case GAME_OVER:		
 		case GAME_INSTRUCTIONS:
 		case GAME_INTRO:
-			goalmanager.update(deltaMs);
 			menuKeyboardHandler();
-			cycleTraffic(deltaMs);
 			break;
 			
 		case GAME_FINISH_LEVEL:
 			finishLevelKeyboardHandler();
 			break;		
 		}
+		
+		// record a game from its first tick, which takes input like any other
+		if (replayDir != null && replay == null && world.getGameState() == GAME_PLAY
+				&& before != GAME_PLAY && before != GAME_FINISH_LEVEL) {
+			startReplay(true);
+			recordInput(deltaMs);
+		}
+		
+		toggleOverlay();
+		
+		// arrow keys outside of play must not move the frog later on,
+		// recorded games poll the keyboard instead
+		if (keyEvents != null && (world.getGameState() != GAME_PLAY || replay != null))
+			keyEvents.clear();
+		
+		int state = world.getGameState();
+		world.update(deltaMs);
+		ui.update(deltaMs);
+		
+		if (spectators != null)
+			spectators.publish(world);
+		if (capture != null)
+			capture.update(deltaMs);
+		
+		if (scores != null && state != GAME_OVER && world.getGameState() == GAME_OVER)
+			submitScore();
+		if (world.getGameState() == GAME_OVER)
+			stopReplay();
 	}
 	
 	
@@ -436,21 +530,34 @@ public class Main extends StaticScreenGame {
 	 * Rendering game objects
 	 */
 	public void render(RenderingContext rc) {
-		switch(gameState) {
+		renderScene(rc);
+		
+		if (capture != null)
+			capture.capture(rc, scene);
+	}
+	
+	private void renderScene(RenderingContext rc) {
+		Frogger frog = world.getFrog();
+		
+		switch(world.getGameState()) {
 		default:
 		case GAME_FINISH_LEVEL:
 		case GAME_PLAY:
 			backgroundLayer.render(rc);
 			
 			if (frog.isAlive()) {
-				movingObjectsLayer.render(rc);
+				world.getMovingObjectsLayer().render(rc);
 				frog.render(rc);		
 			} else {
 				frog.render(rc);
-				movingObjectsLayer.render(rc);				
+				world.getMovingObjectsLayer().render(rc);				
 			}
 			
-			particleLayer.render(rc);
+			// the rest of the crowd, if any
+			for (int i = 1; i < world.getFrogs().size(); i++)
+				world.getFrogs().get(i).render(rc);
+			
+			world.getParticleLayer().render(rc);
 			ui.render(rc);
 			break;
 			
@@ -458,49 +565,155 @@ public class Main extends StaticScreenGame {
 		case GAME_INSTRUCTIONS:
 		case GAME_INTRO:
 			backgroundLayer.render(rc);
-			movingObjectsLayer.render(rc);
+			world.getMovingObjectsLayer().render(rc);
 			ui.render(rc);
 			break;		
 		}
 	}
 	
+	/**
+	 * Save the complete game state, see FroggerWorld.saveSnapshot()
+	 * @param b
+	 */
+	public void saveSnapshot(ByteBuffer b) {
+		world.saveSnapshot(b);
+	}
+	
+	/**
+	 * Restore the game state written by saveSnapshot()
+	 * @param b
+	 */
+	public void restoreSnapshot(ByteBuffer b) {
+		world.restoreSnapshot(b);
+	}
+	
+	/**
+	 * Game loop on our own FramePacer rather than JIG's GameClock: fixed
+	 * deltaMs ticks, then one frame rendered
+	 * 
+	 * The frame rate follows the game state, and the frozen level summary
+	 * is only drawn when it appears and once every REFRESH_NANOS after that,
+	 * in case the window got painted over. A running frame capture keeps its
+	 * own rate: it is offered every frame, drawn on screen or not, and the
+	 * loop never runs slower than the capture fps.
+	 */
+	@Override
+	public void run() {
+		beforeRunning();
+		running = true;
+		pacer.start();
+		
+		int renderedState = -1;
+		long renderedAt = 0;
+		while (running && !gameframe.isExitAndCloseRequested()) {
+			if (!focused)
+				awaitFocus();
+			
+			pacer.setFps(fpsOf(world.getGameState()));
+			int ticks = pacer.await();
+			long frameStart = System.nanoTime();
+			for (int i = 0; i < ticks; i++) {
+				long tickStart = System.nanoTime();
+				update(pacer.nextDeltaMs());
+				overlay.tick(System.nanoTime() - tickStart);
+			}
+			overlay.sample(world.getMovingObjectsLayer(), world.getParticleLayer(), pacer);
+			long moved = world.getFrog().takeMoveStamp();
+			if (moved != 0)
+				shownMove = moved;
+			
+			int state = world.getGameState();
+			long now = System.nanoTime();
+			if (state == GAME_FINISH_LEVEL && state == renderedState 
+					&& now - renderedAt < REFRESH_NANOS) {
+				if (capture != null)
+					capture.capture(gameframe.getRenderingContext(), scene);
+				continue;
+			}
+			
+			render(gameframe.getRenderingContext());
+			gameframe.displayBackBuffer();
+			gameframe.clearBackBuffer();
+			overlay.frame();
+			renderedState = state;
+			renderedAt = now;
+			
+			if (state == GAME_PLAY)
+				quality.frame(System.nanoTime() - frameStart, pacer.getFrameNanos(), System.nanoTime());
+			
+			if (shownMove != 0) {
+				inputLatency.record(System.nanoTime() - shownMove);
+				shownMove = 0;
+			}
+		}
+		gameframe.closeAndExit();
+	}
+	
+	private int fpsOf(int state) {
+		int idle;
+		switch (state) {
+		case GAME_PLAY:
+			return playFps;
+		case GAME_FINISH_LEVEL:
+			idle = IDLE_FPS;
+			break;
+		default:
+			idle = MENU_FPS;
+			break;
+		}
+		
+		// slower ticks would leave a capture short of frames
+		if (capture != null)
+			idle = Math.max(idle, capture.getFps());
+		return Math.min(idle, playFps);
+	}
+	
+	/**
+	 * Nothing ticks or renders until the window has focus again, game time
+	 * picks up where it stopped
+	 */
+	private void awaitFocus() {
+		synchronized (focus) {
+			while (!focused && !gameframe.isExitAndCloseRequested()) {
+				try {
+					focus.wait(250);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		pacer.start();
+		quality.restart();
+	}
+	
 	public static void main (String[] args) {
 		Main f = new Main();
 		f.run();
 	}
 
 
-	public static int getGameLives() {
-		return gameLives;
-	}
-
-
-	public static void setGameLives(int gameLives) {
-		Main.gameLives = gameLives;
+	public FroggerWorld getWorld() {
+		return world;
 	}
-
-
-	public static int getGameScore() {
-		return gameScore;
-	}
-
-
-	public static void setGameScore(int gameScore) {
-		Main.gameScore = gameScore;
+	
+	public FramePacer getPacer() {
+		return pacer;
 	}
-
-
-	public static int getLevelTimer() {
-		return levelTimer;
+	
+	public PerfOverlay getOverlay() {
+		return overlay;
 	}
-
-
-	public static void setLevelTimer(int levelTimer) {
-		Main.levelTimer = levelTimer;
+	
+	public QualityGovernor getQuality() {
+		return quality;
 	}
-
-
-	public static Vector2D getFroggerStart() {
-		return FROGGER_START;
+	
+	/**
+	 * @return - nanoseconds from an arrow key event to the first frame 
+	 * showing the move, only with a window to take key events from
+	 */
+	public LatencyHistogram getInputLatency() {
+		return inputLatency;
 	}
 }
\ No newline at end of file
@@ -28,13 +28,12 @@ package frogger;
 import jig.engine.physics.Body;
 import jig.engine.util.Vector2D;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
 
 /**
  * Abstract class for moving entities in the game
  * 
- * They all have update, sync methods and underlining collision spheres
+ * They all have an update method and a collision shape of their kind
  * 
  * @author vitaliy
  *
@@ -43,32 +42,95 @@ public abstract class MovingEntity extends Body {
 	
 	static final int STEP_SIZE = 32;
 	
-	// List that holds collision spheres
-	protected List<CollisionObject> collisionObjects;
+	// Frames, collision spheres and pixel masks shared by the kind
+	protected final SpriteKind kind;
 	
 	
-	protected MovingEntity (String name) {
-		super(name);
-		collisionObjects = new LinkedList<>();
+	protected MovingEntity (SpriteKind k) {
+		super(k.getFrames());
+		kind = k;
+	}
+	
+	public SpriteKind getKind() {
+		return kind;
 	}
 
-	public List<CollisionObject> getCollisionObjects() {
-		return collisionObjects;
+	/**
+	 * @return - collision spheres, offsets from getCollisionAnchor()
+	 */
+	public CollisionShape getShape() {
+		return kind.getShape();
+	}
+	
+	/**
+	 * @return - opaque pixels of the sprite frames
+	 */
+	public SpriteMask getMask() {
+		return kind.getMask();
 	}
 	
 	/**
-	 * Updates the collision spheres with new position
+	 * Point the collision spheres are offset from, the entity position
+	 */
+	public Vector2D getCollisionAnchor() {
+		return position;
+	}
+	
+	/**
+	 * @return - x of the centre of collision sphere i
+	 */
+	public double getSphereX(int i) {
+		CollisionShape shape = kind.getShape();
+		return getCollisionAnchor().getX() + shape.getOffsetX(i) + shape.getInset(i) + shape.getRadius(i);
+	}
+	
+	public double getSphereY(int i) {
+		CollisionShape shape = kind.getShape();
+		return getCollisionAnchor().getY() + shape.getInset(i) + shape.getRadius(i);
+	}
+	
+	/**
+	 * Write position, velocity, visible frame and activation into a snapshot
 	 * 
-	 * @param position
+	 * Subclasses with extra state append it after calling this method
+	 * @param b
+	 */
+	public void saveState(ByteBuffer b) {
+		b.putDouble(position.getX());
+		b.putDouble(position.getY());
+		b.putDouble(velocity.getX());
+		b.putDouble(velocity.getY());
+		b.putInt(getFrame());
+		b.put((byte) (isActive() ? 1 : 0));
+	}
+	
+	/**
+	 * Read back the state written by saveState() into this object
+	 * 
+	 * Vectors are only replaced when they actually changed, so restoring
+	 * over a recent snapshot mostly writes primitives
+	 * @param b
+	 */
+	public void restoreState(ByteBuffer b) {
+		double x = b.getDouble();
+		double y = b.getDouble();
+		double vx = b.getDouble();
+		double vy = b.getDouble();
+		
+		if (position == null || position.getX() != x || position.getY() != y)
+			position = new Vector2D(x, y);
+		if (velocity.getX() != vx || velocity.getY() != vy)
+			velocity = new Vector2D(vx, vy);
+		
+		setFrame(b.getInt());
+		setActivation(b.get() != 0);
+	}
+	
+	/**
+	 * Put the timers of this entity on the traffic time line, called when it
+	 * joins the world and again after a snapshot restored it
 	 */
-	public void sync(Vector2D position) {
-		int i = 0;
-		for (CollisionObject a : collisionObjects) {
-			Vector2D deltaPos = new Vector2D(position.getX()+(STEP_SIZE*i), position.getY());
-			a.setPosition(deltaPos);
-			i++;
-		}
-		    
+	public void schedule(Scheduler s) {
 	}
 	
 	/**
@@ -80,12 +142,11 @@ public abstract class MovingEntity extends Body {
 	 * in y-axis
 	 */
 	public void update(final long deltaMs) {
-		if (position.getX() > Main.WORLD_WIDTH+width || position.getX() < -(32*4))
+		if (position.getX() > WorldLayout.current().getWidth()+width || position.getX() < -(32*4))
 			setActivation(false);
 			
 	    position = new Vector2D(
 	    		position.getX()+velocity.getX()*deltaMs,
 	    		position.getY()+velocity.getY()*deltaMs);
-	    sync(position);
 	}
 }
\ No newline at end of file
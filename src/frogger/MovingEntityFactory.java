@@ -26,7 +26,7 @@
 package frogger;
 import jig.engine.util.Vector2D;
 
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 public class MovingEntityFactory {
 	
@@ -38,7 +38,7 @@ public class MovingEntityFactory {
 	private Vector2D position;
 	private Vector2D velocity;
 	
-	private Random r;
+	private GameRandom r;
 	
 	private long updateMs = 0;
 	private long copCarDelay = 0;
@@ -54,12 +54,12 @@ public class MovingEntityFactory {
 	 * 
 	 * @param pos
 	 * @param v
-	 * @param rate
+	 * @param seed - seed of this lane's random stream
 	 */
-	public MovingEntityFactory(Vector2D pos, Vector2D v) {
+	public MovingEntityFactory(Vector2D pos, Vector2D v, long seed) {
 		setPosition(pos);
 		setVelocity(v);
-		setR(new Random(System.currentTimeMillis()));
+		setR(new GameRandom(seed));
 
 		creationRate[getCar()]   = (int) Math.round(((Car.LENGTH) + padding + 32) / 
 				Math.abs(getVelocity().getX()));
@@ -137,7 +137,7 @@ public class MovingEntityFactory {
 			/* If the road line is clear, that is there are no cars or truck on it
 			 * then send in a high speed cop car
 			 */
-			if (Math.abs(getVelocity().getX()*copCarDelay) > Main.WORLD_WIDTH) {
+			if (Math.abs(getVelocity().getX()*copCarDelay) > WorldLayout.current().getWidth()) {
 				copCarDelay = 0;
 				return new CopCar(getPosition(), getVelocity().scale(5));
 			}
@@ -150,6 +150,40 @@ public class MovingEntityFactory {
 		updateMs += deltaMs;
 		copCarDelay += deltaMs;
 	}
+	
+	/**
+	 * Lane spawn point, velocity, timers and random stream for a world snapshot
+	 * @param b
+	 */
+	public void saveState(ByteBuffer b) {
+		b.putDouble(position.getX());
+		b.putDouble(position.getY());
+		b.putDouble(velocity.getX());
+		b.putDouble(velocity.getY());
+		b.putLong(updateMs);
+		b.putLong(copCarDelay);
+		b.putLong(rateMs);
+		for (int i = 0; i < creationRate.length; i++)
+			b.putInt(creationRate[i]);
+		b.putLong(r.getState());
+	}
+	
+	public void restoreState(ByteBuffer b) {
+		double x = b.getDouble();
+		double y = b.getDouble();
+		double vx = b.getDouble();
+		double vy = b.getDouble();
+		if (position.getX() != x || position.getY() != y)
+			position = new Vector2D(x, y);
+		if (velocity.getX() != vx || velocity.getY() != vy)
+			velocity = new Vector2D(vx, vy);
+		updateMs = b.getLong();
+		copCarDelay = b.getLong();
+		rateMs = b.getLong();
+		for (int i = 0; i < creationRate.length; i++)
+			creationRate[i] = b.getInt();
+		r.setState(b.getLong());
+	}
 
 	public static int getCar() {
 		return car;
@@ -199,11 +233,11 @@ public class MovingEntityFactory {
 		this.velocity = velocity;
 	}
 
-	public Random getR() {
+	public GameRandom getR() {
 		return r;
 	}
 
-	public void setR(Random r) {
+	public void setR(GameRandom r) {
 		this.r = r;
 	}
 }
\ No newline at end of file
@@ -25,6 +25,8 @@
 
 package frogger;
 
+import java.nio.ByteBuffer;
+
 import jig.engine.util.Vector2D;
 
 /**
@@ -40,7 +42,7 @@ public class Particle extends MovingEntity {
 	private int timeExpire = 1;
 	private int timeAlive = 1;
 	
-	public Particle(String sprite, Vector2D pos, Vector2D v) {
+	public Particle(SpriteKind sprite, Vector2D pos, Vector2D v) {
 		super(sprite);
 		position = pos;
 		velocity = v;
@@ -55,7 +57,7 @@ public class Particle extends MovingEntity {
 	 * @param v - velocity
 	 * @param te - expiration timer in milliseconds
 	 */
-	public Particle(String sprite, Vector2D pos, Vector2D v, int te) {
+	public Particle(SpriteKind sprite, Vector2D pos, Vector2D v, int te) {
 		super(sprite);
 		position = pos;
 		velocity = v;
@@ -63,6 +65,28 @@ public class Particle extends MovingEntity {
 		timeExpire = te;
 	}
 	
+	/**
+	 * Expire after at most ms milliseconds of life, counted from birth
+	 */
+	public void limitLife(int ms) {
+		if (timeExpire == 0 || timeExpire > ms)
+			timeExpire = ms;
+	}
+	
+	@Override
+	public void saveState(ByteBuffer b) {
+		super.saveState(b);
+		b.putInt(timeExpire);
+		b.putInt(timeAlive);
+	}
+	
+	@Override
+	public void restoreState(ByteBuffer b) {
+		super.restoreState(b);
+		timeExpire = b.getInt();
+		timeAlive = b.getInt();
+	}
+	
 	@Override
 	public void update(final long deltaMs) {
 		super.update(deltaMs);
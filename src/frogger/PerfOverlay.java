@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import jig.engine.physics.AbstractBodyLayer;
+
+/**
+ * Numbers behind the performance overlay that FroggerUI draws
+ * 
+ * The game loop reports every tick and frame with a few additions. Only 
+ * sample(), at most every SAMPLE_NANOS, counts entities, reads the 
+ * allocation counter of the game thread and formats the text lines, so the
+ * overlay allocates a handful of strings a few times per second and 
+ * rendering it allocates nothing. GC pause times arrive as JMX 
+ * notifications on their own thread and only the last PAUSES are kept.
+ * 
+ * @author vitaliy
+ *
+ */
+public class PerfOverlay {
+	
+	static final long SAMPLE_NANOS = 250000000L;
+	static final int PAUSES = 4;
+	
+	private volatile boolean visible = false;
+	
+	// Since the last sample
+	private long sampledAt;
+	private long allocatedAt;
+	private long frames;
+	private long ticks;
+	private long tickNanos;
+	private long maxTickNanos;
+	
+	// Latest GC pauses in ms, written by the notification thread
+	private final long[] pauses = new long[PAUSES];
+	private volatile int pauseCount = 0;
+	
+	private final String[] lines = {"", "", "", "", ""};
+	
+	private final NotificationListener gcListener = new NotificationListener() {
+		public void handleNotification(Notification n, Object handback) {
+			if (!n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+				return;
+			GarbageCollectionNotificationInfo info = 
+					GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+			synchronized (pauses) {
+				pauses[pauseCount % PAUSES] = info.getGcInfo().getDuration();
+				pauseCount++;
+			}
+		}
+	};
+	
+	/**
+	 * Listens to the garbage collectors of the JVM from now on
+	 */
+	public PerfOverlay() {
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			if (gc instanceof NotificationEmitter)
+				((NotificationEmitter) gc).addNotificationListener(gcListener, null, null);
+	}
+	
+	public boolean isVisible() {
+		return visible;
+	}
+	
+	/**
+	 * Show or hide, counting starts over when shown
+	 */
+	public void setVisible(boolean v) {
+		if (v && !visible)
+			restart();
+		visible = v;
+	}
+	
+	private void restart() {
+		sampledAt = System.nanoTime();
+		allocatedAt = allocatedBytes();
+		frames = 0;
+		ticks = 0;
+		tickNanos = 0;
+		maxTickNanos = 0;
+	}
+	
+	/**
+	 * A game tick took nanos, call from the game thread
+	 */
+	public void tick(long nanos) {
+		ticks++;
+		tickNanos += nanos;
+		if (nanos > maxTickNanos)
+			maxTickNanos = nanos;
+	}
+	
+	/**
+	 * A frame was displayed
+	 */
+	public void frame() {
+		frames++;
+	}
+	
+	/**
+	 * Work out the lines again if they are due, call from the game thread
+	 * 
+	 * @param pacer - null without one
+	 * @return - true if the lines changed
+	 */
+	public boolean sample(AbstractBodyLayer<MovingEntity> moving, 
+			AbstractBodyLayer<MovingEntity> particles, FramePacer pacer) {
+		long now = System.nanoTime();
+		if (!visible || now - sampledAt < SAMPLE_NANOS)
+			return false;
+		
+		double seconds = (now - sampledAt) / 1e9;
+		long allocated = allocatedBytes();
+		int movingLive = countActive(moving);
+		int particlesLive = countActive(particles);
+		
+		lines[0] = String.format("FPS %.1f  tick %.2f ms, max %.2f", frames / seconds,
+				ticks == 0 ? 0.0 : tickNanos / 1e6 / ticks, maxTickNanos / 1e6);
+		lines[1] = String.format("moving %d live %d dead", movingLive, moving.size() - movingLive);
+		lines[2] = String.format("particles %d live %d dead", particlesLive, particles.size() - particlesLive);
+		lines[3] = String.format("alloc %.1f KB/tick", 
+				ticks == 0 ? 0.0 : (allocated - allocatedAt) / 1024.0 / ticks);
+		lines[4] = gcLine() + (pacer == null ? "" : 
+				String.format("  late %d missed %d", pacer.getLate(), pacer.getMissed()));
+		
+		restart();
+		return true;
+	}
+	
+	private String gcLine() {
+		StringBuilder s = new StringBuilder("GC ms");
+		synchronized (pauses) {
+			int n = Math.min(pauseCount, PAUSES);
+			if (n == 0)
+				s.append(" none");
+			for (int i = 1; i <= n; i++)
+				s.append(' ').append(pauses[(pauseCount - i) % PAUSES]);
+		}
+		return s.toString();
+	}
+	
+	/**
+	 * Bytes allocated by the calling thread, 0 if the JVM can't tell
+	 */
+	static long allocatedBytes() {
+		ThreadMXBean t = ManagementFactory.getThreadMXBean();
+		if (t instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) t).getThreadAllocatedBytes(
+					Thread.currentThread().getId());
+		return 0;
+	}
+	
+	private static int countActive(AbstractBodyLayer<MovingEntity> l) {
+		int n = 0;
+		for (int i = 0; i < l.size(); i++)
+			if (l.get(i).isActive())
+				n++;
+		return n;
+	}
+	
+	/**
+	 * @return - the text of the last sample, one entry per line
+	 */
+	public String[] getLines() {
+		return lines;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import jig.engine.physics.AbstractBodyLayer;
+
+/**
+ * Pixel exact collision from the alpha masks of the sprite frames
+ * 
+ * The frog's current frame, placed at its collision anchor, is tested
+ * against the frame every entity shows, one AND of two 32 pixel rows per 
+ * row the sprites share. Entities whose rows or columns miss the frog are
+ * rejected from their position first, so most of the layer costs two 
+ * compares. The touched part is the 32 pixel tile of the entity holding the
+ * leftmost shared pixel, the tiles line up with the collision spheres, so
+ * a crocodile head is still told from its back.
+ * 
+ * Goals are targets rather than sprites and keep their sphere.
+ * 
+ * @author vitaliy
+ *
+ */
+class PixelCollision implements CollisionSearch {
+	
+	private final Frogger frog;
+	
+	private MovingEntity hit;
+	private int hitSphere;
+	
+	PixelCollision(Frogger f) {
+		frog = f;
+	}
+	
+	public boolean find(AbstractBodyLayer<MovingEntity> l) {
+		SpriteMask frogMask = frog.getMask();
+		int frogFrame = frog.getFrame();
+		int fx = (int) Math.round(frog.getCollisionAnchor().getX());
+		int fy = (int) Math.round(frog.getCollisionAnchor().getY());
+		int fh = frogMask.getHeight();
+		
+		for (int i = 0; i < l.size(); i++) {
+			MovingEntity m = l.get(i);
+			if (!m.isActive() || m.getShape().size() == 0)
+				continue;
+			
+			if (m instanceof Goal) {
+				if (touchesSphere(m)) {
+					hit = m;
+					hitSphere = 0;
+					return true;
+				}
+				continue;
+			}
+			
+			SpriteMask mask = m.getMask();
+			int dy = fy - (int) Math.round(m.getPosition().getY());
+			if (dy <= -fh || dy >= mask.getHeight())
+				continue;
+			int dx = fx - (int) Math.round(m.getPosition().getX());
+			if (dx <= -32 || dx >= mask.getWidth())
+				continue;
+			int frame = m.getFrame();
+			if (frame >= mask.getFrames())
+				continue;
+			
+			int shared = 0;
+			int y1 = Math.min(mask.getHeight(), dy + fh);
+			for (int y = Math.max(0, dy); y < y1; y++)
+				shared |= mask.row(frame, y, dx) & frogMask.row(frogFrame, y - dy, 0);
+			
+			if (shared != 0) {
+				hit = m;
+				hitSphere = (dx + Integer.numberOfTrailingZeros(shared)) >> 5;
+				return true;
+			}
+		}
+		hit = null;
+		return false;
+	}
+	
+	private boolean touchesSphere(MovingEntity m) {
+		double r = frog.getShape().getRadius(0) + m.getShape().getRadius(0);
+		double dx = frog.getSphereX(0) - m.getSphereX(0);
+		double dy = frog.getSphereY(0) - m.getSphereY(0);
+		return dx*dx + dy*dy < r*r;
+	}
+	
+	public MovingEntity getHit() {
+		return hit;
+	}
+	
+	public int getHitSphere() {
+		return hitSphere;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+/**
+ * Steps the cosmetic workload down when frames overrun their budget and 
+ * back up once there is headroom again
+ * 
+ * The game loop reports how long each frame took to update and render. A
+ * rolling average of that above DOWN_LOAD of the frame budget for DOWN_HOLD
+ * drops one quality level, below UP_LOAD for UP_HOLD raises one again. 
+ * Each level keeps fewer weather particles, lets them live shorter and 
+ * plays fewer ambient sounds. 
+ * 
+ * Only presentation is governed: the generators draw the same random 
+ * numbers at every level and dropped particles and skipped sounds never 
+ * touch anything the frog can collide with, so a governed game plays out
+ * like an ungoverned one. Turtle and crocodile animation frames decide 
+ * dives and pixel collisions, they are left alone.
+ * 
+ * @author vitaliy
+ *
+ */
+public class QualityGovernor {
+	
+	static final int FULL = 0;
+	static final int MINIMAL = 3;
+	
+	static final double DOWN_LOAD = 0.9;
+	static final double UP_LOAD = 0.5;
+	static final long DOWN_HOLD = 500000000L;
+	static final long UP_HOLD = 3000000000L;
+	
+	// Weight of the newest frame in the rolling average
+	static final double SMOOTHING = 1.0 / 16;
+	
+	// Per level: keep 1 in n particles, longest particle life, play 1 in n ambient sounds
+	private static final int[] PARTICLE_STRIDE = {1, 2, 4, 8};
+	private static final int[] PARTICLE_LIFE = {Integer.MAX_VALUE, 2000, 1000, 500};
+	private static final int[] AMBIENT_STRIDE = {1, 2, 3, 0};
+	
+	private int level = FULL;
+	private double average = 0;
+	
+	// When the average crossed into the current overload or headroom, 0 if neither
+	private long overSince = 0;
+	private long underSince = 0;
+	
+	private long changes = 0;
+	
+	private int particles = 0;
+	private int ambients = 0;
+	
+	/**
+	 * Feed the time one frame took
+	 * 
+	 * @param frameNanos - update and render time of the frame
+	 * @param budgetNanos - frame period at the current frame rate
+	 * @param now - System.nanoTime() at the end of the frame
+	 */
+	public void frame(long frameNanos, long budgetNanos, long now) {
+		average += (frameNanos - average) * SMOOTHING;
+		
+		if (average > budgetNanos * DOWN_LOAD) {
+			underSince = 0;
+			if (overSince == 0)
+				overSince = now;
+			else if (now - overSince >= DOWN_HOLD && level < MINIMAL)
+				setLevel(level + 1);
+		}
+		else if (average < budgetNanos * UP_LOAD) {
+			overSince = 0;
+			if (underSince == 0)
+				underSince = now;
+			else if (now - underSince >= UP_HOLD && level > FULL)
+				setLevel(level - 1);
+		}
+		else {
+			overSince = 0;
+			underSince = 0;
+		}
+	}
+	
+	/**
+	 * Forget the frame times, after a pause that makes them meaningless
+	 */
+	public void restart() {
+		average = 0;
+		overSince = 0;
+		underSince = 0;
+	}
+	
+	private void setLevel(int l) {
+		level = l;
+		changes++;
+		overSince = 0;
+		underSince = 0;
+	}
+	
+	/**
+	 * @return - whether to show the next weather particle
+	 */
+	public boolean keepParticle() {
+		return particles++ % PARTICLE_STRIDE[level] == 0;
+	}
+	
+	/**
+	 * @return - longest a particle may live in milliseconds
+	 */
+	public int getParticleLife() {
+		return PARTICLE_LIFE[level];
+	}
+	
+	/**
+	 * @return - whether to play the ambient sound that came due
+	 */
+	public boolean keepAmbient() {
+		return AMBIENT_STRIDE[level] != 0 && ambients++ % AMBIENT_STRIDE[level] == 0;
+	}
+	
+	public int getLevel() {
+		return level;
+	}
+	
+	/**
+	 * @return - how many times the level changed
+	 */
+	public long getChanges() {
+		return changes;
+	}
+	
+	/**
+	 * @return - rolling average frame time in nanoseconds
+	 */
+	public double getAverage() {
+		return average;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Memory mapped reader for files written by ReplayWriter
+ * 
+ * seek() restores the nearest keyframe at or before the wanted tick and
+ * replays the remaining ticks, step() then plays on one tick at a time.
+ * Replayed worlds take their seeds from the file, so level changes come
+ * out exactly as recorded.
+ * 
+ * Usage: ReplayReader FILE [TICK] replays a file headless as fast as possible,
+ * recordings end in ReplayWriter.EXTENSION (.frpl)
+ * 
+ * @author vitaliy
+ *
+ */
+public class ReplayReader implements Closeable {
+	
+	private final FileChannel channel;
+	private final MappedByteBuffer map;
+	
+	private long[] keyTicks = new long[16];
+	private long[] keyPositions = new long[16];
+	private int keyCount = 0;
+	private long tickCount = 0;
+	
+	private long tick = 0;
+	private int runKeys = 0;
+	private int runDelta = 0;
+	private int runRemaining = 0;
+	
+	// Seeds recorded for the tick being stepped
+	private long[] seeds = new long[16];
+	private int seedCount = 0;
+	private int seedNext = 0;
+	
+	// The world's own seed source, drawn from and discarded with every
+	// recorded seed so it ends up where it was in the recorded game
+	private LongSupplier worldSeeds;
+	
+	private final LongSupplier recordedSeeds = new LongSupplier() {
+		public long getAsLong() {
+			worldSeeds.getAsLong();
+			return seedNext < seedCount ? seeds[seedNext++] : 0;
+		}
+	};
+	
+	public ReplayReader(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("Replay too large to map: " + file);
+		map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		
+		if (size < 12 || map.getInt(0) != ReplayWriter.MAGIC || map.getInt(4) != ReplayWriter.VERSION)
+			throw new IOException("Not a Frogger replay: " + file);
+		
+		if (!readIndex())
+			scan();
+		map.position(12);
+	}
+	
+	/**
+	 * Keyframe index from the trailer of a cleanly closed file
+	 */
+	private boolean readIndex() {
+		int end = map.limit();
+		if (end < 12 + 20 || map.getInt(end - 4) != ReplayWriter.END_MAGIC)
+			return false;
+		
+		tickCount = map.getLong(end - 20);
+		int p = (int) map.getLong(end - 12);
+		if (map.get(p) != ReplayWriter.INDEX)
+			return false;
+		
+		int n = map.getInt(p + 1);
+		p += 5;
+		for (int i = 0; i < n; i++, p += 16)
+			addKeyframe(map.getLong(p), map.getLong(p + 8));
+		return true;
+	}
+	
+	/**
+	 * Walk all records of a file that was never closed
+	 */
+	private void scan() {
+		int p = 12;
+		int end = map.limit();
+		tickCount = 0;
+		while (p < end) {
+			byte type = map.get(p);
+			if (type == ReplayWriter.TICK && p + 4 <= end) {
+				tickCount++;
+				p += 4;
+			} else if (type == ReplayWriter.RUN && p + 8 <= end) {
+				tickCount += map.getInt(p + 4);
+				p += 8;
+			} else if (type == ReplayWriter.SEED && p + 9 <= end) {
+				p += 9;
+			} else if (type == ReplayWriter.KEYFRAME && p + 13 <= end) {
+				int length = map.getInt(p + 9);
+				if (p + 13 + length > end)
+					break;
+				addKeyframe(map.getLong(p + 1), p);
+				p += 13 + length;
+			} else {
+				break;
+			}
+		}
+	}
+	
+	private void addKeyframe(long t, long position) {
+		if (keyCount == keyTicks.length) {
+			keyTicks = Arrays.copyOf(keyTicks, keyCount * 2);
+			keyPositions = Arrays.copyOf(keyPositions, keyCount * 2);
+		}
+		keyTicks[keyCount] = t;
+		keyPositions[keyCount] = position;
+		keyCount++;
+	}
+	
+	/**
+	 * Bring w to the state right before tick t
+	 */
+	public void seek(FroggerWorld w, long t) {
+		int lo = 0;
+		int hi = keyCount - 1;
+		int found = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keyTicks[mid] <= t) {
+				found = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		if (found < 0)
+			throw new IllegalArgumentException("No keyframe before tick " + t);
+		
+		int p = (int) keyPositions[found];
+		int length = map.getInt(p + 9);
+		map.position(p + 13);
+		w.restoreSnapshot(map);
+		map.position(p + 13 + length);
+		
+		tick = keyTicks[found];
+		runRemaining = 0;
+		while (tick < t && step(w))
+			;
+	}
+	
+	/**
+	 * Play the next recorded tick on w
+	 * 
+	 * @return - false at the end of the recording
+	 */
+	public boolean step(FroggerWorld w) {
+		if (runRemaining == 0 && !nextRun())
+			return false;
+		
+		runRemaining--;
+		seedCount = 0;
+		seedNext = 0;
+		if (runRemaining == 0)
+			readSeeds();
+		
+		worldSeeds = w.getSeedSource();
+		w.setSeedSource(recordedSeeds);
+		GameSession.step(w, runKeys, runDelta);
+		w.setSeedSource(worldSeeds);
+		
+		tick++;
+		return true;
+	}
+	
+	private boolean nextRun() {
+		while (map.remaining() >= 4) {
+			byte type = map.get();
+			switch(type) {
+			case ReplayWriter.TICK:
+				runKeys = map.get();
+				runDelta = map.getShort() & 0xFFFF;
+				runRemaining = 1;
+				return true;
+			case ReplayWriter.RUN:
+				runKeys = map.get();
+				runDelta = map.getShort() & 0xFFFF;
+				runRemaining = map.getInt();
+				return true;
+			case ReplayWriter.SEED:
+				map.getLong();
+				break;
+			case ReplayWriter.KEYFRAME:
+				map.getLong();
+				int length = map.getInt();
+				map.position(map.position() + length);
+				break;
+			default:
+				return false;
+			}
+		}
+		return false;
+	}
+	
+	private void readSeeds() {
+		while (map.remaining() >= 9 && map.get(map.position()) == ReplayWriter.SEED) {
+			map.get();
+			if (seedCount == seeds.length)
+				seeds = Arrays.copyOf(seeds, seedCount * 2);
+			seeds[seedCount++] = map.getLong();
+		}
+	}
+	
+	public long getTick() {
+		return tick;
+	}
+	
+	public long getTickCount() {
+		return tickCount;
+	}
+	
+	public int getKeyframeCount() {
+		return keyCount;
+	}
+	
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	public static void main(String[] args) throws IOException {
+		FroggerWorld.initHeadless();
+		FroggerWorld w = new FroggerWorld(false);
+		
+		try (ReplayReader r = new ReplayReader(Paths.get(args[0]))) {
+			long start = args.length > 1 ? Long.parseLong(args[1]) : 0;
+			
+			long t0 = System.nanoTime();
+			r.seek(w, start);
+			long t1 = System.nanoTime();
+			while (r.step(w))
+				;
+			long t2 = System.nanoTime();
+			
+			System.out.printf("%d ticks, %d keyframes, seek to %d in %.2f ms%n", 
+					r.getTickCount(), r.getKeyframeCount(), start, (t1 - t0) / 1e6);
+			System.out.printf("Replayed %d ticks in %.2f ms (%.0f ticks/s)%n", 
+					r.getTick() - start, (t2 - t1) / 1e6, (r.getTick() - start) / ((t2 - t1) / 1e9));
+			System.out.printf("Final level %d, score %d, lives %d%n", 
+					w.getGameLevel(), w.getGameScore(), w.getGameLives());
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Append-only recorder for a headless game
+ * 
+ * File layout, all numbers big endian:
+ * 
+ *   header   MAGIC(4) VERSION(4) keyframeInterval(4)
+ *   'T'      keys(1) deltaMs(2)                     one tick
+ *   'R'      keys(1) deltaMs(2) count(4)            count identical ticks
+ *   'S'      seed(8)                                seed drawn during the tick before
+ *   'K'      tick(8) length(4) snapshot(length)     world before that tick
+ *   'I'      count(4) [tick(8) position(8)]*count   keyframe index, written by close()
+ *   trailer  ticks(8) indexPosition(8) END_MAGIC(4)
+ * 
+ * Records are staged in a direct buffer and written through a FileChannel.
+ * A file without trailer, e.g. after a crash, is still readable, ReplayReader
+ * then rebuilds the index by scanning it.
+ * 
+ * @author vitaliy
+ *
+ */
+public class ReplayWriter implements Closeable {
+	
+	static final int MAGIC     = 0x4652504C; // "FRPL"
+	static final int END_MAGIC = 0x46524E44; // "FRND"
+	static final int VERSION   = 1;
+	
+	// File name extension of every recording, whoever writes it
+	public static final String EXTENSION = ".frpl";
+	
+	static final byte TICK     = 'T';
+	static final byte RUN      = 'R';
+	static final byte SEED     = 'S';
+	static final byte KEYFRAME = 'K';
+	static final byte INDEX    = 'I';
+	
+	static final int DEFAULT_KEYFRAME_INTERVAL = 600;
+	
+	private final FroggerWorld world;
+	private final FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(WorldSnapshot.CAPACITY + 4096);
+	private final int keyframeInterval;
+	private final LongSupplier worldSeeds;
+	
+	private long position = 0; // file position of buffer start
+	private long tick = 0;
+	
+	// Identical ticks are collapsed into one run record
+	private int runKeys = -1;
+	private int runDelta = 0;
+	private int runCount = 0;
+	
+	private long[] keyTicks = new long[16];
+	private long[] keyPositions = new long[16];
+	private int keyCount = 0;
+	
+	public ReplayWriter(Path file, FroggerWorld w) throws IOException {
+		this(file, w, DEFAULT_KEYFRAME_INTERVAL);
+	}
+	
+	/**
+	 * Start recording w, the first tick written gets a keyframe
+	 */
+	public ReplayWriter(Path file, FroggerWorld w, int interval) throws IOException {
+		world = w;
+		keyframeInterval = interval;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, 
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(keyframeInterval);
+		
+		// Record every seed the world hands out while we are recording
+		worldSeeds = w.getSeedSource();
+		w.setSeedSource(new LongSupplier() {
+			public long getAsLong() {
+				long s = worldSeeds.getAsLong();
+				seed(s);
+				return s;
+			}
+		});
+	}
+	
+	/**
+	 * Record one tick, call before the world is stepped with the same input
+	 */
+	public void tick(int keys, long deltaMs) {
+		if (tick % keyframeInterval == 0)
+			keyframe();
+		
+		int delta = (int) Math.min(deltaMs, 0xFFFF);
+		if (keys != runKeys || delta != runDelta || runCount == Integer.MAX_VALUE) {
+			flushRun();
+			runKeys = keys;
+			runDelta = delta;
+		}
+		runCount++;
+		tick++;
+	}
+	
+	private void seed(long s) {
+		flushRun();
+		ensure(9);
+		buffer.put(SEED);
+		buffer.putLong(s);
+	}
+	
+	private void keyframe() {
+		flushRun();
+		ensure(WorldSnapshot.bound(world) + 13);
+		
+		if (keyCount == keyTicks.length) {
+			keyTicks = Arrays.copyOf(keyTicks, keyCount * 2);
+			keyPositions = Arrays.copyOf(keyPositions, keyCount * 2);
+		}
+		keyTicks[keyCount] = tick;
+		keyPositions[keyCount] = position + buffer.position();
+		keyCount++;
+		
+		buffer.put(KEYFRAME);
+		buffer.putLong(tick);
+		int lengthAt = buffer.position();
+		buffer.putInt(0);
+		world.saveSnapshot(buffer);
+		buffer.putInt(lengthAt, buffer.position() - lengthAt - 4);
+	}
+	
+	private void flushRun() {
+		if (runCount == 0)
+			return;
+		ensure(8);
+		buffer.put(runCount == 1 ? TICK : RUN);
+		buffer.put((byte) runKeys);
+		buffer.putShort((short) runDelta);
+		if (runCount > 1)
+			buffer.putInt(runCount);
+		runCount = 0;
+	}
+	
+	/**
+	 * Make room for bytes more, the buffer grows for keyframes of big worlds
+	 */
+	private void ensure(int bytes) {
+		if (buffer.remaining() < bytes)
+			flush();
+		if (buffer.capacity() < bytes)
+			buffer = ByteBuffer.allocateDirect(Math.max(bytes, buffer.capacity() * 2));
+	}
+	
+	/**
+	 * Write out everything staged so far
+	 */
+	public void flush() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining())
+				position += channel.write(buffer);
+		} catch (IOException e) {
+			throw new IllegalStateException("Can't write replay", e);
+		}
+		buffer.clear();
+	}
+	
+	public long getTick() {
+		return tick;
+	}
+	
+	/**
+	 * Write the keyframe index and trailer, then stop recording
+	 */
+	public void close() throws IOException {
+		flushRun();
+		
+		world.setSeedSource(worldSeeds);
+		
+		long indexPosition = position + buffer.position();
+		ensure(5);
+		buffer.put(INDEX);
+		buffer.putInt(keyCount);
+		for (int i = 0; i < keyCount; i++) {
+			ensure(16);
+			buffer.putLong(keyTicks[i]);
+			buffer.putLong(keyPositions[i]);
+		}
+		ensure(20);
+		buffer.putLong(tick);
+		buffer.putLong(indexPosition);
+		buffer.putInt(END_MAGIC);
+		flush();
+		channel.close();
+	}
+}
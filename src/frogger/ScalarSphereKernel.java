@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+/**
+ * Plain loop SphereKernel, the default
+ * 
+ * @author vitaliy
+ *
+ */
+public class ScalarSphereKernel implements SphereKernel {
+	
+	public int firstKey(double fx, double fy, double fr, 
+			double[] x, double[] y, double[] r, double[] key, int from, int to) {
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			double d = fr + r[i];
+			double dx = fx - x[i];
+			double dy = fy - y[i];
+			if (dx*dx + dy*dy < d * d && key[i] < best)
+				best = key[i];
+		}
+		return best == Double.POSITIVE_INFINITY ? -1 : (int) best;
+	}
+	
+	public void firstKeys(double[] fx, double[] fy, double[] fr, int frogs, 
+			double[] x, double[] y, double[] r, double[] key, int from, int to, int[] hits) {
+		for (int f = 0; f < frogs; f++)
+			hits[f] = firstKey(fx[f], fy[f], fr[f], x, y, r, key, from, to);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.Arrays;
+
+/**
+ * Timers on a simulation time line
+ * 
+ * Subsystems register a task for the time something is due instead of 
+ * adding up deltaMs every update, so whatever waits costs nothing until 
+ * then. Time only moves with advance(), and a task runs on the first 
+ * advance that takes the time past its due time, the same moment a 
+ * "+= deltaMs" counter would have gone over its limit. Tasks due together
+ * run in the order they were registered and may register again from run().
+ * 
+ * The world keeps one line per clock: traffic time moves with the traffic,
+ * world time in every state but the level summary, play time only while a
+ * game is played. Snapshots keep now() and the due times each subsystem 
+ * stores, restoring clears the line and the subsystems register again.
+ * 
+ * @author vitaliy
+ *
+ */
+public class Scheduler {
+	
+	/**
+	 * Something to do at a time
+	 */
+	public interface Task {
+		/**
+		 * @param s - line the task was due on, now() is the time it ran
+		 */
+		void run(Scheduler s);
+	}
+	
+	private long now = 0;
+	
+	// Binary heap ordered by due time, then registration
+	private long[] due = new long[64];
+	private long[] order = new long[64];
+	private Task[] tasks = new Task[64];
+	private int size = 0;
+	private long registered = 0;
+	
+	public long now() {
+		return now;
+	}
+	
+	/**
+	 * Run t on the first advance past the time due
+	 */
+	public void at(long time, Task t) {
+		if (size == tasks.length) {
+			due = Arrays.copyOf(due, size * 2);
+			order = Arrays.copyOf(order, size * 2);
+			tasks = Arrays.copyOf(tasks, size * 2);
+		}
+		
+		long seq = registered++;
+		int k = size++;
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			if (before(parent, time, seq))
+				break;
+			due[k] = due[parent];
+			order[k] = order[parent];
+			tasks[k] = tasks[parent];
+			k = parent;
+		}
+		due[k] = time;
+		order[k] = seq;
+		tasks[k] = t;
+	}
+	
+	/**
+	 * Run t once more than delayMs have passed
+	 * 
+	 * @return - the due time
+	 */
+	public long after(long delayMs, Task t) {
+		at(now + delayMs, t);
+		return now + delayMs;
+	}
+	
+	/**
+	 * Move the time by deltaMs and run every task that became due
+	 */
+	public void advance(long deltaMs) {
+		now += deltaMs;
+		while (size > 0 && due[0] < now)
+			pop().run(this);
+	}
+	
+	/**
+	 * Drop every task, keeping the time
+	 */
+	public void clear() {
+		Arrays.fill(tasks, 0, size, null);
+		size = 0;
+	}
+	
+	/**
+	 * Drop every task and set the time, before a snapshot registers them again
+	 */
+	public void reset(long time) {
+		clear();
+		now = time;
+	}
+	
+	/**
+	 * @return - number of tasks waiting
+	 */
+	public int size() {
+		return size;
+	}
+	
+	private boolean before(int i, long time, long seq) {
+		return due[i] < time || (due[i] == time && order[i] < seq);
+	}
+	
+	private Task pop() {
+		Task top = tasks[0];
+		int last = --size;
+		long lastDue = due[last];
+		long lastOrder = order[last];
+		Task lastTask = tasks[last];
+		tasks[last] = null;
+		
+		int k = 0;
+		while (true) {
+			int child = 2 * k + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && before(child + 1, due[child], order[child]))
+				child++;
+			if (!before(child, lastDue, lastOrder))
+				break;
+			due[k] = due[child];
+			order[k] = order[child];
+			tasks[k] = tasks[child];
+			k = child;
+		}
+		if (size > 0) {
+			due[k] = lastDue;
+			order[k] = lastOrder;
+			tasks[k] = lastTask;
+		}
+		return top;
+	}
+}
\ No newline at end of file
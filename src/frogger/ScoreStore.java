@@ -0,0 +1,385 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent high scores for kiosks with millions of plays
+ * 
+ * Every submitted score is appended to scores.log as a fixed size record
+ * with a CRC32. In memory the store keeps the best TOP_CAPACITY plays in a
+ * sorted array and every player's best score in a Fenwick tree indexed by
+ * score, so top-N and rank queries never look at the log.
+ * 
+ * scores.idx is a checkpoint of the in-memory state plus the log length it
+ * covers. Opening the store loads the checkpoint and only replays the log
+ * records appended after it. A torn record at the end of the log, left by
+ * a crash, is cut off.
+ * 
+ * @author vitaliy
+ *
+ */
+public class ScoreStore implements Closeable {
+	
+	static final int TOP_CAPACITY = 1000;
+	static final int MAX_SCORE = (1 << 20) - 1;   // higher scores rank as MAX_SCORE
+	static final int NAME_BYTES = 24;
+	static final int RECORD_SIZE = 8 + 4 + 4 + NAME_BYTES + 4;
+	static final int CHECKPOINT_EVERY = 4096;
+	
+	private static final int INDEX_MAGIC = 0x4652484B; // "FRHK"
+	private static final int INDEX_VERSION = 1;
+	
+	/**
+	 * One play in the top list
+	 */
+	public static final class Entry {
+		public final String player;
+		public final int score;
+		public final int level;
+		public final long timeMs;
+		
+		Entry(String p, int s, int l, long t) {
+			player = p;
+			score = s;
+			level = l;
+			timeMs = t;
+		}
+		
+		@Override
+		public String toString() {
+			return player + " " + score + " (L" + level + ")";
+		}
+	}
+	
+	private final Path logFile;
+	private final Path indexFile;
+	private final FileChannel log;
+	private final ByteBuffer record = ByteBuffer.allocateDirect(RECORD_SIZE);
+	private final CRC32 crc = new CRC32();
+	
+	private long logLength = 0;
+	private int sinceCheckpoint = 0;
+	
+	// Best plays, highest score first
+	private final Entry[] top = new Entry[TOP_CAPACITY];
+	private int topCount = 0;
+	
+	// Best score of every player, and how many players have each best score
+	private final Map<String, Integer> bests = new HashMap<>();
+	private final int[] fenwick = new int[MAX_SCORE + 2];
+	
+	private ScoreStore(Path dir) throws IOException {
+		Files.createDirectories(dir);
+		logFile = dir.resolve("scores.log");
+		indexFile = dir.resolve("scores.idx");
+		log = FileChannel.open(logFile, StandardOpenOption.CREATE, 
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+	
+	/**
+	 * Open or create the store kept in dir
+	 */
+	public static ScoreStore open(Path dir) throws IOException {
+		ScoreStore s = new ScoreStore(dir);
+		long from = s.loadIndex() ? s.logLength : 0;
+		s.replayLog(from);
+		return s;
+	}
+	
+	/**
+	 * Record a finished game
+	 */
+	public synchronized void submit(String player, int score, int level) throws IOException {
+		long now = System.currentTimeMillis();
+		
+		record.clear();
+		encode(record, now, score, level, player);
+		record.flip();
+		while (record.hasRemaining())
+			log.write(record, logLength + record.position());
+		logLength += RECORD_SIZE;
+		
+		add(player, score, level, now);
+		
+		if (++sinceCheckpoint >= CHECKPOINT_EVERY)
+			checkpoint();
+	}
+	
+	/**
+	 * @return - the n best plays, highest first
+	 */
+	public synchronized List<Entry> top(int n) {
+		int k = Math.min(n, topCount);
+		List<Entry> l = new ArrayList<>(k);
+		for (int i = 0; i < k; i++)
+			l.add(top[i]);
+		return l;
+	}
+	
+	/**
+	 * @return - 1 for the player with the best score, 0 for unknown players
+	 */
+	public synchronized int rank(String player) {
+		Integer best = bests.get(normalize(player));
+		if (best == null)
+			return 0;
+		return 1 + bests.size() - prefix(clamp(best));
+	}
+	
+	/**
+	 * @return - best score of the player, -1 for unknown players
+	 */
+	public synchronized int best(String player) {
+		Integer best = bests.get(normalize(player));
+		return best == null ? -1 : best;
+	}
+	
+	public synchronized int getPlayerCount() {
+		return bests.size();
+	}
+	
+	private void add(String player, int score, int level, long time) {
+		player = normalize(player);
+		
+		// top list, binary search for the insertion point
+		if (topCount < TOP_CAPACITY || score > top[topCount - 1].score) {
+			int lo = 0;
+			int hi = topCount;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (top[mid].score >= score)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			int moved = Math.min(topCount, TOP_CAPACITY - 1) - lo;
+			System.arraycopy(top, lo, top, lo + 1, moved);
+			top[lo] = new Entry(player, score, level, time);
+			if (topCount < TOP_CAPACITY)
+				topCount++;
+		}
+		
+		Integer old = bests.get(player);
+		if (old == null || score > old) {
+			if (old != null)
+				update(clamp(old), -1);
+			update(clamp(score), 1);
+			bests.put(player, score);
+		}
+	}
+	
+	private static int clamp(int score) {
+		return Math.max(0, Math.min(MAX_SCORE, score));
+	}
+	
+	private void update(int score, int delta) {
+		for (int i = score + 1; i < fenwick.length; i += i & -i)
+			fenwick[i] += delta;
+	}
+	
+	// number of players whose best is <= score
+	private int prefix(int score) {
+		int n = 0;
+		for (int i = score + 1; i > 0; i -= i & -i)
+			n += fenwick[i];
+		return n;
+	}
+	
+	/**
+	 * Trimmed name that fits into NAME_BYTES of UTF-8, shortened by whole
+	 * characters so that it decodes to the same name after a restart
+	 */
+	private static String normalize(String player) {
+		String name = player.trim();
+		int end = name.length();
+		while (name.substring(0, end).getBytes(StandardCharsets.UTF_8).length > NAME_BYTES)
+			end = name.offsetByCodePoints(end, -1);
+		return name.substring(0, end);
+	}
+	
+	private void encode(ByteBuffer b, long time, int score, int level, String player) {
+		int start = b.position();
+		b.putLong(time);
+		b.putInt(score);
+		b.putInt(level);
+		byte[] name = Arrays.copyOf(normalize(player).getBytes(StandardCharsets.UTF_8), NAME_BYTES);
+		b.put(name);
+		
+		crc.reset();
+		for (int i = start; i < b.position(); i++)
+			crc.update(b.get(i));
+		b.putInt((int) crc.getValue());
+	}
+	
+	/**
+	 * Apply log records from the given offset on, cut off a torn tail
+	 */
+	private void replayLog(long from) throws IOException {
+		long size = log.size();
+		ByteBuffer b = ByteBuffer.allocate(RECORD_SIZE * 1024);
+		long p = from;
+		
+		while (p + RECORD_SIZE <= size) {
+			b.clear();
+			long n = Math.min(b.capacity(), (size - p) / RECORD_SIZE * RECORD_SIZE);
+			b.limit((int) n);
+			while (b.hasRemaining() && log.read(b, p + b.position()) > 0)
+				;
+			b.flip();
+			
+			boolean torn = false;
+			while (b.remaining() >= RECORD_SIZE) {
+				int start = b.position();
+				crc.reset();
+				crc.update(b.array(), start, RECORD_SIZE - 4);
+				if (b.getInt(start + RECORD_SIZE - 4) != (int) crc.getValue()) {
+					torn = true;
+					break;
+				}
+				long time = b.getLong();
+				int score = b.getInt();
+				int level = b.getInt();
+				byte[] name = new byte[NAME_BYTES];
+				b.get(name);
+				b.getInt();
+				add(decode(name), score, level, time);
+				p += RECORD_SIZE;
+			}
+			if (torn)
+				break;
+		}
+		
+		if (p < size)
+			log.truncate(p);
+		logLength = p;
+	}
+	
+	/**
+	 * Write the in-memory state and the log length it covers to scores.idx
+	 */
+	public synchronized void checkpoint() throws IOException {
+		log.force(false);
+		
+		ByteBuffer b = ByteBuffer.allocate(64 + topCount * (RECORD_SIZE + 8) 
+				+ bests.size() * (NAME_BYTES + 8));
+		b.putInt(INDEX_MAGIC);
+		b.putInt(INDEX_VERSION);
+		b.putLong(logLength);
+		b.putInt(topCount);
+		for (int i = 0; i < topCount; i++)
+			encode(b, top[i].timeMs, top[i].score, top[i].level, top[i].player);
+		b.putInt(bests.size());
+		for (Map.Entry<String, Integer> e : bests.entrySet()) {
+			b.put(Arrays.copyOf(e.getKey().getBytes(StandardCharsets.UTF_8), NAME_BYTES));
+			b.putInt(e.getValue());
+		}
+		crc.reset();
+		crc.update(b.array(), 0, b.position());
+		b.putInt((int) crc.getValue());
+		b.flip();
+		
+		Path tmp = indexFile.resolveSibling("scores.idx.tmp");
+		try (FileChannel c = FileChannel.open(tmp, StandardOpenOption.CREATE, 
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (b.hasRemaining())
+				c.write(b);
+			c.force(false);
+		}
+		Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		sinceCheckpoint = 0;
+	}
+	
+	/**
+	 * @return - false if there is no usable checkpoint
+	 */
+	private boolean loadIndex() throws IOException {
+		if (!Files.exists(indexFile))
+			return false;
+		
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+		if (b.limit() < 24 || b.getInt() != INDEX_MAGIC || b.getInt() != INDEX_VERSION)
+			return false;
+		crc.reset();
+		crc.update(b.array(), 0, b.limit() - 4);
+		if (b.getInt(b.limit() - 4) != (int) crc.getValue())
+			return false;
+		
+		long covered = b.getLong();
+		if (covered > log.size())
+			return false;
+		
+		int n = b.getInt();
+		byte[] name = new byte[NAME_BYTES];
+		for (int i = 0; i < n; i++) {
+			long time = b.getLong();
+			int score = b.getInt();
+			int level = b.getInt();
+			b.get(name);
+			b.getInt();
+			top[i] = new Entry(decode(name), score, level, time);
+		}
+		topCount = n;
+		
+		int players = b.getInt();
+		for (int i = 0; i < players; i++) {
+			b.get(name);
+			int best = b.getInt();
+			bests.put(decode(name), best);
+			update(clamp(best), 1);
+		}
+		
+		logLength = covered;
+		return true;
+	}
+	
+	private static String decode(byte[] name) {
+		int len = 0;
+		while (len < name.length && name[len] != 0)
+			len++;
+		return new String(name, 0, len, StandardCharsets.UTF_8);
+	}
+	
+	public synchronized void close() throws IOException {
+		checkpoint();
+		log.close();
+	}
+}
\ No newline at end of file
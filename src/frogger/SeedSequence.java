@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Sequence of independent seeds derived from one master seed
+ * 
+ * Seed n of a sequence is the SplitMix64 mix of seed + n*GOLDEN, so it only
+ * depends on the sequence seed and a plain counter. A sequence belongs to a
+ * single world and is never shared, and split() derives a child sequence for
+ * a session or subsystem without drawing from the parent at all.
+ * 
+ * The master seed comes from -Dfrogger.seed=N, otherwise from the clock,
+ * and is printed by the tools so that any run can be repeated.
+ * 
+ * @author vitaliy
+ *
+ */
+public class SeedSequence implements LongSupplier {
+	
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+	
+	public static final long MASTER = Long.getLong("frogger.seed", 
+			mix(System.nanoTime() ^ System.currentTimeMillis()));
+	
+	// Worlds made without a seed take the next stream of MASTER
+	private static final AtomicLong worlds = new AtomicLong();
+	
+	private long seed;
+	private long index = 0;
+	
+	public SeedSequence(long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * @return - the next seed, every call gives an unrelated value
+	 */
+	public long getAsLong() {
+		return mix(seed + GOLDEN * ++index);
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * @return - how many seeds have been drawn, the position in the sequence
+	 */
+	public long getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Continue another sequence, from a seed and position returned by 
+	 * getSeed() and getIndex()
+	 */
+	public void reset(long s, long i) {
+		seed = s;
+		index = i;
+	}
+	
+	/**
+	 * @return - an independent sequence, the same stream always gives the same one
+	 */
+	public SeedSequence split(long stream) {
+		return new SeedSequence(mix(seed ^ mix(stream * GOLDEN + 1)));
+	}
+	
+	/**
+	 * Seed for a world nobody gave a seed to, the n-th world of the process
+	 * gets stream n of the master seed
+	 */
+	public static long nextWorldSeed() {
+		return new SeedSequence(MASTER).split(worlds.getAndIncrement()).getAsLong();
+	}
+	
+	/**
+	 * SplitMix64 finalizer
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,377 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Real time ticking of many game sessions in one JVM
+ * 
+ * JIG's GameClock and StaticScreenGame.run() drive one game per process
+ * from a loop of their own. Hosted games register here instead, each with
+ * its own tick period, and get update(periodMs) called when it is due.
+ * 
+ * Due sessions sit in a hierarchical timing wheel of 1 ms slots: four
+ * levels of 64 slots cover about four and a half hours, sessions due 
+ * later wait in the top level and go round again. One driver thread owns
+ * the wheel, every millisecond it cascades the upper levels into the lower
+ * ones and hands the sessions of the slot that came due to the carriers in
+ * batches. A carrier updates a batch, works out when each session is due 
+ * next and queues it back for the driver, so the wheel needs no locks and a
+ * session never runs on two carriers at once.
+ * 
+ * Every update records its lateness, from the due time to the start of 
+ * the update, in the session's LatencyHistogram. Sessions that fall more 
+ * than MAX_BEHIND periods behind skip the missed ticks instead of running
+ * them back to back.
+ * 
+ * Carriers are a fixed pool of platform threads. On a JVM with virtual 
+ * threads -Dfrogger.virtualCarriers=true runs every batch on a virtual
+ * thread instead.
+ * 
+ * @author vitaliy
+ *
+ */
+public class SessionScheduler {
+	
+	static final int WHEEL_BITS = 6;
+	static final int SLOTS = 1 << WHEEL_BITS;
+	static final int LEVELS = 4;
+	
+	// Ticks of the wheel the top level reaches
+	static final long SPAN = 1L << (WHEEL_BITS * LEVELS);
+	
+	static final long TICK_NANOS = 1000000L;
+	
+	// Sessions per carrier task
+	static final int BATCH = 32;
+	
+	static final int MAX_BEHIND = 4;
+	
+	/**
+	 * A session registered with the scheduler and its lateness record
+	 * 
+	 * Statistics are written by the carriers, read them after stop() or 
+	 * accept a slightly stale view
+	 */
+	public static final class Handle {
+		final GameSession session;
+		final long periodMs;
+		final long periodNanos;
+		
+		long dueNanos;
+		long dueTick;
+		Handle next; // in the same wheel slot
+		volatile boolean cancelled = false;
+		volatile Throwable failure = null;
+		
+		final LatencyHistogram lateness = new LatencyHistogram();
+		long ticks = 0;
+		long skipped = 0;
+		
+		Handle(GameSession s, long periodMs) {
+			session = s;
+			this.periodMs = periodMs;
+			periodNanos = periodMs * 1000000L;
+		}
+		
+		public GameSession getSession() {
+			return session;
+		}
+		
+		public long getPeriodMs() {
+			return periodMs;
+		}
+		
+		/**
+		 * @return - nanoseconds from due time to the start of each update
+		 */
+		public LatencyHistogram getLateness() {
+			return lateness;
+		}
+		
+		public long getTicks() {
+			return ticks;
+		}
+		
+		/**
+		 * @return - ticks dropped while the session was too far behind
+		 */
+		public long getSkipped() {
+			return skipped;
+		}
+		
+		/**
+		 * @return - what the session threw, it is no longer ticked then
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+	}
+	
+	private final Handle[] wheel = new Handle[LEVELS * SLOTS];
+	private final long origin = System.nanoTime();
+	private long current = 0;
+	
+	// Handed to the driver by add() and by the carriers
+	private final ConcurrentLinkedQueue<Handle> incoming = new ConcurrentLinkedQueue<>();
+	
+	private final List<Handle> sessions = new ArrayList<>();
+	private final ExecutorService carriers;
+	private Thread driver;
+	private volatile boolean running = false;
+	private volatile boolean recording = true;
+	
+	/**
+	 * @param carrierThreads - size of the carrier pool, unused for virtual carriers
+	 */
+	public SessionScheduler(int carrierThreads) {
+		carriers = newCarriers(carrierThreads);
+	}
+	
+	private static ExecutorService newCarriers(int threads) {
+		if (Boolean.getBoolean("frogger.virtualCarriers")) {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				Logger.getLogger(SessionScheduler.class.getName()).warning(
+						"Virtual threads unavailable, using a pool of " + threads + ": " + e);
+			}
+		}
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int n = 0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "session-carrier-" + n++);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * Tick s every periodMs from one period from now, from any thread
+	 */
+	public Handle add(GameSession s, long periodMs) {
+		if (periodMs <= 0)
+			throw new IllegalArgumentException("Tick period must be positive: " + periodMs);
+		
+		Handle h = new Handle(s, periodMs);
+		h.dueNanos = System.nanoTime() + h.periodNanos;
+		synchronized (sessions) {
+			sessions.add(h);
+		}
+		incoming.add(h);
+		return h;
+	}
+	
+	/**
+	 * Stop ticking the session of h, an update already running completes
+	 */
+	public void remove(Handle h) {
+		h.cancelled = true;
+		synchronized (sessions) {
+			sessions.remove(h);
+		}
+	}
+	
+	/**
+	 * @return - the sessions ticked now
+	 */
+	public List<Handle> getSessions() {
+		synchronized (sessions) {
+			return new ArrayList<>(sessions);
+		}
+	}
+	
+	/**
+	 * Record lateness and ticks only while on, e.g. to leave out a warm up
+	 */
+	public void setRecording(boolean on) {
+		recording = on;
+	}
+	
+	public synchronized void start() {
+		if (running)
+			return;
+		running = true;
+		driver = new Thread("session-driver") {
+			@Override
+			public void run() {
+				drive();
+			}
+		};
+		driver.setDaemon(true);
+		driver.start();
+	}
+	
+	/**
+	 * Stop the driver and wait for the carriers to finish their batches
+	 */
+	public synchronized void stop() throws InterruptedException {
+		running = false;
+		if (driver != null)
+			driver.join();
+		carriers.shutdown();
+		carriers.awaitTermination(1, TimeUnit.MINUTES);
+	}
+	
+	private void drive() {
+		Handle[] batch = new Handle[BATCH];
+		while (running) {
+			Handle h;
+			while ((h = incoming.poll()) != null) {
+				if (h.cancelled)
+					continue;
+				h.dueTick = Math.max(current + 1, tickOf(h.dueNanos));
+				place(h);
+			}
+			
+			long now = (System.nanoTime() - origin) / TICK_NANOS;
+			int n = 0;
+			while (current < now) {
+				current++;
+				cascade();
+				
+				int slot = (int) (current & (SLOTS - 1));
+				h = wheel[slot];
+				wheel[slot] = null;
+				while (h != null) {
+					Handle next = h.next;
+					h.next = null;
+					if (!h.cancelled) {
+						batch[n++] = h;
+						if (n == BATCH) {
+							carriers.execute(new Batch(batch, n));
+							batch = new Handle[BATCH];
+							n = 0;
+						}
+					}
+					h = next;
+				}
+			}
+			if (n > 0) {
+				carriers.execute(new Batch(batch, n));
+				batch = new Handle[BATCH];
+			}
+			
+			long wake = origin + (current + 1) * TICK_NANOS;
+			LockSupport.parkNanos(wake - System.nanoTime());
+		}
+	}
+	
+	/**
+	 * First wheel tick at or after the time t
+	 */
+	private long tickOf(long t) {
+		return (t - origin + TICK_NANOS - 1) / TICK_NANOS;
+	}
+	
+	/**
+	 * Put h in the lowest level that reaches its due tick, which is at or 
+	 * after the current one
+	 */
+	private void place(Handle h) {
+		long t = Math.min(h.dueTick, current + SPAN - 1);
+		long delta = t - current;
+		int level = 0;
+		while (delta >= (1L << (WHEEL_BITS * (level + 1))))
+			level++;
+		int slot = level * SLOTS + (int) ((t >>> (WHEEL_BITS * level)) & (SLOTS - 1));
+		h.next = wheel[slot];
+		wheel[slot] = h;
+	}
+	
+	/**
+	 * Move the sessions of every upper level slot that starts at the current
+	 * tick down, the highest level first
+	 */
+	private void cascade() {
+		int level = 0;
+		while (level < LEVELS - 1 && (current & ((1L << (WHEEL_BITS * (level + 1))) - 1)) == 0)
+			level++;
+		for (; level > 0; level--) {
+			int slot = level * SLOTS + (int) ((current >>> (WHEEL_BITS * level)) & (SLOTS - 1));
+			Handle h = wheel[slot];
+			wheel[slot] = null;
+			while (h != null) {
+				Handle next = h.next;
+				if (!h.cancelled)
+					place(h);
+				h = next;
+			}
+		}
+	}
+	
+	/**
+	 * Sessions due in the same slot, updated one after the other on a carrier
+	 */
+	private class Batch implements Runnable {
+		private final Handle[] handles;
+		private final int n;
+		
+		Batch(Handle[] h, int n) {
+			handles = h;
+			this.n = n;
+		}
+		
+		@Override
+		public void run() {
+			for (int i = 0; i < n; i++) {
+				Handle h = handles[i];
+				long start = System.nanoTime();
+				try {
+					h.session.update(h.periodMs);
+				} catch (Throwable t) {
+					h.failure = t;
+					continue;
+				}
+				if (recording) {
+					h.lateness.record(start - h.dueNanos);
+					h.ticks++;
+				}
+				
+				h.dueNanos += h.periodNanos;
+				long behind = System.nanoTime() - h.dueNanos;
+				if (behind > MAX_BEHIND * h.periodNanos) {
+					long missed = behind / h.periodNanos;
+					h.dueNanos += missed * h.periodNanos;
+					if (recording)
+						h.skipped += missed;
+				}
+				if (running && !h.cancelled)
+					incoming.add(h);
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,319 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Spectator of a SpectatorServer, rebuilds the broadcast world from the
+ * keyframes and deltas
+ * 
+ * Usage: SpectatorClient [host] [-port N] [-viewers N] [-stalled N] 
+ *                        [-seconds N] [-render]
+ * 
+ * Without -render, all viewers share one selector thread and a summary is
+ * printed every few seconds. Stalled viewers connect but never read, to
+ * exercise the server's backpressure. The view needs the server's
+ * -Dfrogger.layout.
+ * 
+ * @author vitaliy
+ *
+ */
+public class SpectatorClient {
+	
+	// entities by id
+	int[] kind = new int[256];
+	int[] variant = new int[256];
+	int[] x = new int[256];
+	int[] y = new int[256];
+	int[] frame = new int[256];
+	boolean[] live = new boolean[256];
+	int entities = 0;
+	
+	long tick;
+	int gameState, gameLevel, gameLives, gameScore, levelTimer, flags;
+	int frogX, frogY, frogFrame;
+	
+	private final SocketChannel channel;
+	private ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+	
+	private boolean synced = false;
+	private long keyframes = 0;
+	private long deltas = 0;
+	private long bytes = 0;
+	
+	public SpectatorClient(SocketChannel c) {
+		channel = c;
+	}
+	
+	public static SpectatorClient connect(String host, int port) throws IOException {
+		SocketChannel c = SocketChannel.open(new InetSocketAddress(host, port));
+		c.configureBlocking(false);
+		c.socket().setTcpNoDelay(true);
+		return new SpectatorClient(c);
+	}
+	
+	/**
+	 * Read what arrived and apply all complete messages, does not block
+	 * 
+	 * @return - number of messages applied, -1 once the server is gone
+	 */
+	public int poll() throws IOException {
+		int n = channel.read(in);
+		if (n < 0)
+			return -1;
+		bytes += n;
+		
+		int messages = 0;
+		in.flip();
+		while (in.remaining() >= 4) {
+			int len = in.getInt(in.position());
+			if (in.remaining() < len + 4)
+				break;
+			
+			int end = in.position() + 4 + len;
+			in.position(in.position() + 4);
+			apply(in);
+			in.position(end);
+			messages++;
+		}
+		
+		// keyframes can outgrow the buffer when there are many particles
+		if (in.remaining() >= 4 && in.getInt(in.position()) + 4 > in.capacity()) {
+			ByteBuffer bigger = ByteBuffer.allocate(in.getInt(in.position()) + 4);
+			bigger.put(in);
+			in = bigger;
+		} else
+			in.compact();
+		return messages;
+	}
+	
+	/**
+	 * Apply one message, deltas are ignored until the first keyframe
+	 */
+	void apply(ByteBuffer b) {
+		byte type = b.get();
+		if (type == SpectatorServer.KEYFRAME) {
+			Arrays.fill(live, false);
+			entities = 0;
+			synced = true;
+			keyframes++;
+		} else {
+			if (!synced)
+				return;
+			deltas++;
+		}
+		
+		tick = SpectatorServer.getVarint(b);
+		gameState = b.get();
+		gameLevel = SpectatorServer.getVarint(b);
+		gameLives = SpectatorServer.getVarint(b);
+		gameScore = SpectatorServer.unzigzag(SpectatorServer.getVarint(b));
+		levelTimer = SpectatorServer.getVarint(b);
+		flags = b.get();
+		frogX = SpectatorServer.unzigzag(SpectatorServer.getVarint(b));
+		frogY = SpectatorServer.unzigzag(SpectatorServer.getVarint(b));
+		frogFrame = SpectatorServer.getVarint(b);
+		
+		int n = SpectatorServer.getVarint(b);
+		for (int i = 0; i < n; i++) {
+			int id = SpectatorServer.getVarint(b);
+			if (live[id])
+				entities--;
+			live[id] = false;
+		}
+		
+		n = SpectatorServer.getVarint(b);
+		for (int i = 0; i < n; i++) {
+			int id = SpectatorServer.getVarint(b);
+			ensure(id);
+			kind[id] = b.get();
+			variant[id] = SpectatorServer.getVarint(b);
+			x[id] = SpectatorServer.unzigzag(SpectatorServer.getVarint(b));
+			y[id] = SpectatorServer.unzigzag(SpectatorServer.getVarint(b));
+			frame[id] = SpectatorServer.getVarint(b);
+			if (!live[id])
+				entities++;
+			live[id] = true;
+		}
+		
+		n = SpectatorServer.getVarint(b);
+		for (int i = 0; i < n; i++) {
+			int id = SpectatorServer.getVarint(b);
+			int mask = b.get();
+			if ((mask & SpectatorServer.MOVED_X) != 0)
+				x[id] += SpectatorServer.unzigzag(SpectatorServer.getVarint(b));
+			if ((mask & SpectatorServer.MOVED_Y) != 0)
+				y[id] += SpectatorServer.unzigzag(SpectatorServer.getVarint(b));
+			if ((mask & SpectatorServer.NEW_FRAME) != 0)
+				frame[id] = SpectatorServer.getVarint(b);
+		}
+	}
+	
+	private void ensure(int id) {
+		if (id < live.length)
+			return;
+		int n = Math.max(id + 1, live.length * 2);
+		kind = Arrays.copyOf(kind, n);
+		variant = Arrays.copyOf(variant, n);
+		x = Arrays.copyOf(x, n);
+		y = Arrays.copyOf(y, n);
+		frame = Arrays.copyOf(frame, n);
+		live = Arrays.copyOf(live, n);
+	}
+	
+	public SocketChannel getChannel() {
+		return channel;
+	}
+	
+	public boolean isSynced() {
+		return synced;
+	}
+	
+	public int getEntityCount() {
+		return entities;
+	}
+	
+	public long getKeyframes() {
+		return keyframes;
+	}
+	
+	public long getDeltas() {
+		return deltas;
+	}
+	
+	public long getBytes() {
+		return bytes;
+	}
+	
+	@Override
+	public String toString() {
+		return "tick " + tick + ", level " + gameLevel + ", lives " + gameLives 
+				+ ", score " + gameScore + ", time " + levelTimer + ", entities " + entities
+				+ ", frog " + frogX / SpectatorServer.SUBPIXEL + "," + frogY / SpectatorServer.SUBPIXEL;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		String host = "localhost";
+		int port = SpectatorServer.DEFAULT_PORT;
+		int viewers = 1;
+		int stalled = 0;
+		int seconds = 0;
+		boolean render = false;
+		
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-port"))
+				port = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-viewers"))
+				viewers = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-stalled"))
+				stalled = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-seconds"))
+				seconds = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-render"))
+				render = true;
+			else
+				host = args[i];
+		}
+		
+		if (render) {
+			SpectatorView v = new SpectatorView(connect(host, port));
+			v.run();
+			return;
+		}
+		
+		Selector selector = Selector.open();
+		List<SpectatorClient> clients = new ArrayList<SpectatorClient>();
+		for (int i = 0; i < viewers; i++) {
+			SpectatorClient c = connect(host, port);
+			clients.add(c);
+			c.getChannel().register(selector, SelectionKey.OP_READ, c);
+		}
+		
+		// connected, but never read from
+		List<SocketChannel> stalls = new ArrayList<SocketChannel>();
+		for (int i = 0; i < stalled; i++) {
+			SocketChannel c = SocketChannel.open(new InetSocketAddress(host, port));
+			c.socket().setReceiveBufferSize(4096);
+			stalls.add(c);
+		}
+		
+		long start = System.nanoTime();
+		long report = start;
+		long messages = 0;
+		while (seconds == 0 || System.nanoTime() - start < seconds * 1000000000L) {
+			selector.select(1000);
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey k = keys.next();
+				keys.remove();
+				SpectatorClient c = (SpectatorClient) k.attachment();
+				int n = c.poll();
+				if (n < 0) {
+					k.cancel();
+					clients.remove(c);
+				} else
+					messages += n;
+			}
+			
+			long now = System.nanoTime();
+			if (now - report > 5000000000L || clients.isEmpty()) {
+				long bytes = 0;
+				long keyframes = 0;
+				int synced = 0;
+				for (SpectatorClient c : clients) {
+					bytes += c.getBytes();
+					keyframes += c.getKeyframes();
+					if (c.isSynced())
+						synced++;
+				}
+				
+				System.out.printf("%d viewers (%d synced), %.0f msg/s, %d KB, %d keyframes%n", 
+						clients.size(), synced, messages * 1e9 / (now - report), bytes / 1024, keyframes);
+				if (!clients.isEmpty())
+					System.out.println("  " + clients.get(0));
+				report = now;
+				messages = 0;
+				if (clients.isEmpty())
+					break;
+			}
+		}
+		
+		for (SpectatorClient c : clients)
+			c.getChannel().close();
+		for (SocketChannel c : stalls)
+			c.close();
+	}
+}
\ No newline at end of file
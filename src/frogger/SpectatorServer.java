@@ -0,0 +1,578 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jig.engine.physics.AbstractBodyLayer;
+
+/**
+ * Broadcasts a live game to spectators over TCP
+ * 
+ * The game thread calls publish() once per tick. It encodes what changed
+ * since the previous tick into one message, which is shared read-only by
+ * every viewer. A single selector thread accepts viewers and writes the
+ * messages out.
+ * 
+ * Message layout, after a 4 byte length:
+ * 
+ *   type(1) tick
+ *   hud      state(1) level lives score timer flags(1)
+ *   frog     x y frame
+ *   despawn  count [id]*count
+ *   spawn    count [id kind(1) variant x y frame]*count
+ *   update   count [id mask(1) dx? dy? frame?]*count
+ * 
+ * Numbers are varints, positions are 1/8 pixel and signed values zigzag
+ * encoded. A KEYFRAME spawns every entity, a DELTA only carries changes.
+ * 
+ * New viewers wait for the next keyframe. A viewer that falls more than
+ * MAX_PENDING bytes behind has its queue dropped and is resynced with a
+ * keyframe, so slow viewers never make the server buffer without bound.
+ * 
+ * @author vitaliy
+ *
+ */
+public class SpectatorServer implements Runnable, Closeable {
+	
+	static final int DEFAULT_PORT = 7650;
+	static final int MAX_PENDING = 256 * 1024;
+	static final int SEND_BUFFER = 64 * 1024;
+	
+	static final byte KEYFRAME = 1;
+	static final byte DELTA    = 2;
+	
+	static final int SUBPIXEL = 8;
+	
+	static final int FLAG_WINDY = 1;
+	static final int FLAG_HOT   = 2;
+	static final int FLAG_AUTO  = 4;
+	static final int FLAG_ALIVE = 8;
+	
+	static final int MOVED_X = 1;
+	static final int MOVED_Y = 2;
+	static final int NEW_FRAME = 4;
+	
+	/**
+	 * What the viewers last saw of an entity
+	 */
+	private static final class Slot {
+		int id;
+		int x, y, frame;
+		long seen;
+	}
+	
+	/**
+	 * A connected spectator, only touched by the selector thread
+	 */
+	private static final class Viewer {
+		final SocketChannel channel;
+		final ArrayDeque<ByteBuffer> queue = new ArrayDeque<ByteBuffer>();
+		int pending = 0;
+		boolean synced = false;
+		
+		Viewer(SocketChannel c) {
+			channel = c;
+		}
+	}
+	
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final Thread thread;
+	private volatile boolean running = true;
+	
+	// encoder state, game thread only
+	private final Map<MovingEntity, Slot> slots = new IdentityHashMap<MovingEntity, Slot>();
+	private final ArrayDeque<Integer> freeIds = new ArrayDeque<Integer>();
+	private final List<Slot> spawned = new ArrayList<Slot>();
+	private final List<MovingEntity> spawnedEntities = new ArrayList<MovingEntity>();
+	private final List<Slot> moved = new ArrayList<Slot>();
+	private int[] movedMask = new int[256];
+	private int[] movedDx = new int[256];
+	private int[] movedDy = new int[256];
+	private final List<Integer> despawned = new ArrayList<Integer>();
+	private final ByteBuffer scratch = ByteBuffer.allocate(1 << 20);
+	private int nextId = 0;
+	private long tick = 0;
+	
+	// game thread to selector thread
+	private final ConcurrentLinkedQueue<ByteBuffer> outbox = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicBoolean keyframeWanted = new AtomicBoolean(false);
+	private volatile int viewerCount = 0;
+	
+	// selector thread only
+	private final List<Viewer> viewers = new ArrayList<Viewer>();
+	private final ByteBuffer discard = ByteBuffer.allocate(512);
+	
+	private volatile long bytesSent = 0;
+	private volatile long resyncs = 0;
+	
+	public SpectatorServer(int port) throws IOException {
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port), 4096);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		
+		thread = new Thread(this, "spectator-server");
+		thread.setDaemon(true);
+	}
+	
+	public void start() {
+		thread.start();
+	}
+	
+	/**
+	 * Send this tick of the world to the viewers, called by the game thread
+	 */
+	public void publish(FroggerWorld w) {
+		if (viewerCount == 0) {
+			reset();
+			return;
+		}
+		
+		tick++;
+		outbox.add(encodeDelta(w));
+		if (keyframeWanted.getAndSet(false))
+			outbox.add(encodeKeyframe(w));
+		selector.wakeup();
+	}
+	
+	private void reset() {
+		slots.clear();
+		freeIds.clear();
+		nextId = 0;
+	}
+	
+	private ByteBuffer encodeDelta(FroggerWorld w) {
+		spawned.clear();
+		spawnedEntities.clear();
+		moved.clear();
+		despawned.clear();
+		
+		scan(w.getMovingObjectsLayer());
+		scan(w.getParticleLayer());
+		
+		Iterator<Slot> i = slots.values().iterator();
+		while (i.hasNext()) {
+			Slot s = i.next();
+			if (s.seen != tick) {
+				despawned.add(s.id);
+				freeIds.add(s.id);
+				i.remove();
+			}
+		}
+		
+		ByteBuffer b = begin(DELTA, w);
+		putVarint(b, despawned.size());
+		for (int id : despawned)
+			putVarint(b, id);
+		
+		putVarint(b, spawned.size());
+		for (int k = 0; k < spawned.size(); k++)
+			putSpawn(b, spawned.get(k), spawnedEntities.get(k));
+		
+		putVarint(b, moved.size());
+		for (int k = 0; k < moved.size(); k++) {
+			Slot s = moved.get(k);
+			int mask = movedMask[k];
+			putVarint(b, s.id);
+			b.put((byte) mask);
+			if ((mask & MOVED_X) != 0)
+				putVarint(b, zigzag(movedDx[k]));
+			if ((mask & MOVED_Y) != 0)
+				putVarint(b, zigzag(movedDy[k]));
+			if ((mask & NEW_FRAME) != 0)
+				putVarint(b, s.frame);
+		}
+		return finish(b);
+	}
+	
+	private ByteBuffer encodeKeyframe(FroggerWorld w) {
+		ByteBuffer b = begin(KEYFRAME, w);
+		putVarint(b, 0);
+		putVarint(b, slots.size());
+		for (Map.Entry<MovingEntity, Slot> e : slots.entrySet())
+			putSpawn(b, e.getValue(), e.getKey());
+		putVarint(b, 0);
+		return finish(b);
+	}
+	
+	/**
+	 * Compare a layer against the last tick, collect spawns and moves
+	 * 
+	 * Layers keep their inactive members around, those go unseen so they
+	 * are despawned once and skipped from then on
+	 */
+	private void scan(AbstractBodyLayer<MovingEntity> l) {
+		for (int k = 0; k < l.size(); k++) {
+			MovingEntity m = l.get(k);
+			if (!m.isActive())
+				continue;
+			
+			int x = fixed(m.getPosition().getX());
+			int y = fixed(m.getPosition().getY());
+			int frame = m.getFrame();
+			
+			Slot s = slots.get(m);
+			if (s == null) {
+				s = new Slot();
+				s.id = freeIds.isEmpty() ? nextId++ : freeIds.poll();
+				s.x = x;
+				s.y = y;
+				s.frame = frame;
+				slots.put(m, s);
+				spawned.add(s);
+				spawnedEntities.add(m);
+			} else if (s.seen != tick) {
+				int mask = 0;
+				if (x != s.x)
+					mask |= MOVED_X;
+				if (y != s.y)
+					mask |= MOVED_Y;
+				if (frame != s.frame)
+					mask |= NEW_FRAME;
+				
+				if (mask != 0) {
+					int n = moved.size();
+					if (n == movedMask.length) {
+						movedMask = Arrays.copyOf(movedMask, n * 2);
+						movedDx = Arrays.copyOf(movedDx, n * 2);
+						movedDy = Arrays.copyOf(movedDy, n * 2);
+					}
+					movedMask[n] = mask;
+					movedDx[n] = x - s.x;
+					movedDy[n] = y - s.y;
+					moved.add(s);
+					s.x = x;
+					s.y = y;
+					s.frame = frame;
+				}
+			}
+			s.seen = tick;
+		}
+	}
+	
+	private ByteBuffer begin(byte type, FroggerWorld w) {
+		ByteBuffer b = scratch;
+		b.clear();
+		b.putInt(0);
+		b.put(type);
+		putVarint(b, (int) tick);
+		
+		b.put((byte) w.getGameState());
+		putVarint(b, w.getGameLevel());
+		putVarint(b, Math.max(0, w.getGameLives()));
+		putVarint(b, zigzag(w.getGameScore()));
+		putVarint(b, Math.max(0, w.getLevelTimer()));
+		
+		Frogger f = w.getFrog();
+		int flags = 0;
+		if (w.getWind().isWindy())
+			flags |= FLAG_WINDY;
+		if (w.getHeatWave().isHot())
+			flags |= FLAG_HOT;
+		if (w.autopilotOn)
+			flags |= FLAG_AUTO;
+		if (f.isAlive())
+			flags |= FLAG_ALIVE;
+		b.put((byte) flags);
+		
+		putVarint(b, zigzag(fixed(f.getPosition().getX())));
+		putVarint(b, zigzag(fixed(f.getPosition().getY())));
+		putVarint(b, f.getFrame());
+		return b;
+	}
+	
+	private ByteBuffer finish(ByteBuffer b) {
+		b.putInt(0, b.position() - 4);
+		b.flip();
+		ByteBuffer msg = ByteBuffer.allocate(b.remaining());
+		msg.put(b);
+		msg.flip();
+		return msg.asReadOnlyBuffer();
+	}
+	
+	private void putSpawn(ByteBuffer b, Slot s, MovingEntity m) {
+		byte kind = WorldSnapshot.kindOf(m);
+		putVarint(b, s.id);
+		b.put(kind);
+		putVarint(b, kind == WorldSnapshot.CAR ? ((Car) m).variant : 0);
+		putVarint(b, zigzag(s.x));
+		putVarint(b, zigzag(s.y));
+		putVarint(b, s.frame);
+	}
+	
+	static int fixed(double v) {
+		return (int) Math.round(v * SUBPIXEL);
+	}
+	
+	static int zigzag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+	
+	static int unzigzag(int v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	static void putVarint(ByteBuffer b, int v) {
+		while ((v & ~0x7F) != 0) {
+			b.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		b.put((byte) v);
+	}
+	
+	static int getVarint(ByteBuffer b) {
+		int v = 0;
+		int shift = 0;
+		byte c;
+		do {
+			c = b.get();
+			v |= (c & 0x7F) << shift;
+			shift += 7;
+		} while (c < 0);
+		return v;
+	}
+	
+	/**
+	 * Selector loop
+	 */
+	public void run() {
+		while (running) {
+			try {
+				selector.select();
+				
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey k = keys.next();
+					keys.remove();
+					
+					if (!k.isValid())
+						continue;
+					if (k.isAcceptable())
+						accept();
+					else {
+						Viewer v = (Viewer) k.attachment();
+						if (k.isReadable())
+							read(k, v);
+						if (k.isValid() && k.isWritable())
+							flush(k, v);
+					}
+				}
+				
+				deliver();
+			} catch (IOException e) {
+				if (running)
+					System.err.println("Spectator server: " + e);
+			}
+		}
+	}
+	
+	private void accept() throws IOException {
+		SocketChannel c;
+		while ((c = server.accept()) != null) {
+			c.configureBlocking(false);
+			c.socket().setTcpNoDelay(true);
+			c.socket().setSendBufferSize(SEND_BUFFER);
+			Viewer v = new Viewer(c);
+			c.register(selector, SelectionKey.OP_READ, v);
+			viewers.add(v);
+		}
+		viewerCount = viewers.size();
+		keyframeWanted.set(true);
+	}
+	
+	// viewers don't send anything, reading only notices disconnects
+	private void read(SelectionKey k, Viewer v) {
+		try {
+			discard.clear();
+			if (v.channel.read(discard) < 0)
+				drop(k, v);
+		} catch (IOException e) {
+			drop(k, v);
+		}
+	}
+	
+	private void drop(SelectionKey k, Viewer v) {
+		k.cancel();
+		try {
+			v.channel.close();
+		} catch (IOException e) {
+			// already gone
+		}
+		viewers.remove(v);
+		viewerCount = viewers.size();
+	}
+	
+	/**
+	 * Queue every published message to the viewers it applies to
+	 */
+	private void deliver() {
+		ByteBuffer msg;
+		while ((msg = outbox.poll()) != null) {
+			boolean keyframe = msg.get(4) == KEYFRAME;
+			
+			for (int i = 0; i < viewers.size(); i++) {
+				Viewer v = viewers.get(i);
+				if (keyframe == v.synced)
+					continue;
+				
+				if (v.pending + msg.remaining() > MAX_PENDING) {
+					resync(v);
+					continue;
+				}
+				
+				v.queue.add(msg.duplicate());
+				v.pending += msg.remaining();
+				v.synced = true;
+			}
+		}
+		
+		for (int i = viewers.size() - 1; i >= 0; i--) {
+			Viewer v = viewers.get(i);
+			if (!v.queue.isEmpty())
+				flush(v.channel.keyFor(selector), v);
+		}
+	}
+	
+	/**
+	 * Forget the backlog of a slow viewer and wait for a keyframe, a
+	 * message that is partly written already has to stay
+	 */
+	private void resync(Viewer v) {
+		ByteBuffer head = v.queue.peek();
+		boolean started = head != null && head.position() > 0;
+		
+		v.queue.clear();
+		v.pending = 0;
+		if (started) {
+			v.queue.add(head);
+			v.pending = head.remaining();
+		}
+		v.synced = false;
+		keyframeWanted.set(true);
+		resyncs++;
+	}
+	
+	private void flush(SelectionKey k, Viewer v) {
+		try {
+			while (!v.queue.isEmpty()) {
+				ByteBuffer head = v.queue.peek();
+				int n = v.channel.write(head);
+				v.pending -= n;
+				bytesSent += n;
+				if (head.hasRemaining())
+					break;
+				v.queue.poll();
+			}
+		} catch (IOException e) {
+			drop(k, v);
+			return;
+		}
+		
+		int ops = v.queue.isEmpty() ? SelectionKey.OP_READ 
+				: SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+		if (k.interestOps() != ops)
+			k.interestOps(ops);
+	}
+	
+	public int getViewerCount() {
+		return viewerCount;
+	}
+	
+	public long getBytesSent() {
+		return bytesSent;
+	}
+	
+	public long getResyncs() {
+		return resyncs;
+	}
+	
+	public void close() throws IOException {
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Viewer v : viewers)
+			v.channel.close();
+		server.close();
+		selector.close();
+	}
+	
+	/**
+	 * Stand-alone server playing an autopilot game at 60 ticks per second
+	 * 
+	 * Usage: SpectatorServer [port]
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		
+		FroggerWorld.initHeadless();
+		GameSession session = new GameSession(new SyntheticPlayer.Auto());
+		SpectatorServer s = new SpectatorServer(port);
+		s.start();
+		System.out.println("Spectator server on port " + port);
+		
+		long tickNs = 1000000000L / 60;
+		long next = System.nanoTime();
+		long report = next;
+		while (true) {
+			session.update(16);
+			s.publish(session.getWorld());
+			
+			next += tickNs;
+			long sleep = next - System.nanoTime();
+			if (sleep > 0)
+				Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+			
+			if (next - report > 5000000000L) {
+				report = next;
+				System.out.println("viewers " + s.getViewerCount() + ", sent " 
+						+ s.getBytesSent() / 1024 + " KB, resyncs " + s.getResyncs());
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.util.Arrays;
+
+import jig.engine.FontResource;
+import jig.engine.ImageResource;
+import jig.engine.RenderingContext;
+import jig.engine.ResourceFactory;
+import jig.engine.Sprite;
+import jig.engine.hli.ImageBackgroundLayer;
+import jig.engine.hli.StaticScreenGame;
+import jig.engine.util.Vector2D;
+
+/**
+ * Window showing what a SpectatorClient receives
+ * 
+ * @author vitaliy
+ *
+ */
+public class SpectatorView extends StaticScreenGame {
+	
+	private final SpectatorClient client;
+	private ImageBackgroundLayer backgroundLayer;
+	private Sprite frog;
+	
+	// sprites by entity id, rebuilt when an id is reused for another kind
+	private MovingEntity[] sprites = new MovingEntity[256];
+	
+	private FontResource font;
+	
+	public SpectatorView(SpectatorClient c) {
+		super(WorldLayout.current().getWidth(), WorldLayout.current().getHeight(), false);
+		client = c;
+		
+		gameframe.setTitle("Frogger - spectator");
+		ResourceFactory.getFactory().loadResources(Main.RSC_PATH, "resources.xml");
+		SpriteKind.resolveAll();
+		
+		ImageResource bkg = ResourceFactory.getFactory().getFrames(
+				Main.SPRITE_SHEET + "#background").get(0);
+		backgroundLayer = new ImageBackgroundLayer(bkg, WorldLayout.current().getWidth(),
+				WorldLayout.current().getHeight(), ImageBackgroundLayer.TILE_IMAGE);
+		
+		frog = new Sprite(SpriteKind.FROG.getFrames());
+		font = ResourceFactory.getFactory().getFontResource(
+				new Font("Sans Serif", Font.BOLD, 14), Color.white, null);
+	}
+	
+	public void update(long deltaMs) {
+		try {
+			if (client.poll() < 0)
+				System.exit(0);
+		} catch (IOException e) {
+			System.err.println("Spectator: " + e);
+			System.exit(1);
+		}
+	}
+	
+	public void render(RenderingContext rc) {
+		backgroundLayer.render(rc);
+		if (!client.isSynced())
+			return;
+		
+		if (sprites.length < client.live.length)
+			sprites = Arrays.copyOf(sprites, client.live.length);
+		
+		// road and river first, particles on top
+		for (int pass = 0; pass < 2; pass++) {
+			for (int id = 0; id < client.live.length; id++) {
+				if (!client.live[id])
+					continue;
+				byte kind = (byte) client.kind[id];
+				boolean particle = kind == WorldSnapshot.WIND_PARTICLE 
+						|| kind == WorldSnapshot.HEAT_PARTICLE;
+				if (particle != (pass == 1))
+					continue;
+				
+				MovingEntity m = sprites[id];
+				if (m == null || WorldSnapshot.kindOf(m) != kind 
+						|| (kind == WorldSnapshot.CAR && ((Car) m).variant != client.variant[id]))
+					m = sprites[id] = WorldSnapshot.build(kind, client.variant[id]);
+				m.setPosition(position(client.x[id], client.y[id]));
+				m.setFrame(client.frame[id]);
+				m.render(rc);
+			}
+		}
+		
+		frog.setPosition(position(client.frogX, client.frogY));
+		frog.setFrame(client.frogFrame);
+		frog.render(rc);
+		
+		font.render("Time: " + client.levelTimer, rc, 
+				AffineTransform.getTranslateInstance(180, 7));
+		font.render("L" + client.gameLevel, rc, 
+				AffineTransform.getTranslateInstance(270, 7));
+		font.render("Score: " + client.gameScore, rc, 
+				AffineTransform.getTranslateInstance(310, 7));
+		font.render("Lives: " + client.gameLives, rc, 
+				AffineTransform.getTranslateInstance(8, 7));
+	}
+	
+	private static Vector2D position(int x, int y) {
+		return new Vector2D((double) x / SpectatorServer.SUBPIXEL, (double) y / SpectatorServer.SUBPIXEL);
+	}
+}
\ No newline at end of file
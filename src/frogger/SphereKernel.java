@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.logging.Logger;
+
+/**
+ * Sphere against many spheres distance test, the inner loop of collision
+ * 
+ * Spheres are given as primitive arrays of centres and radii. A sphere 
+ * touches another one when the squared distance of the centres is below the
+ * squared sum of the radii, exactly as FroggerCollisionDetection tests it.
+ * 
+ * ScalarSphereKernel is the default. -Dfrogger.simd=true loads 
+ * frogger.vector.VectorSphereKernel, built on the incubating Vector API, 
+ * which has to be compiled and run with --add-modules jdk.incubator.vector.
+ * Without it the scalar kernel is used.
+ * 
+ * @author vitaliy
+ *
+ */
+public interface SphereKernel {
+	
+	static final String VECTOR_KERNEL = "frogger.vector.VectorSphereKernel";
+	
+	/**
+	 * @return - lowest key of the spheres in [from, to) that the sphere 
+	 * (fx, fy, fr) touches, -1 for none. Keys are whole numbers from 0.
+	 */
+	int firstKey(double fx, double fy, double fr, 
+			double[] x, double[] y, double[] r, double[] key, int from, int to);
+	
+	/**
+	 * firstKey() for each of frogs spheres, results go to hits
+	 */
+	void firstKeys(double[] fx, double[] fy, double[] fr, int frogs, 
+			double[] x, double[] y, double[] r, double[] key, int from, int to, int[] hits);
+	
+	/**
+	 * @return - the kernel picked by -Dfrogger.simd
+	 */
+	static SphereKernel load() {
+		return load(Boolean.getBoolean("frogger.simd"));
+	}
+	
+	static SphereKernel load(boolean simd) {
+		if (simd) {
+			try {
+				return (SphereKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				Logger.getLogger(SphereKernel.class.getName()).warning(
+						"Vector API kernel unavailable, using scalar: " + e);
+			}
+		}
+		return new ScalarSphereKernel();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import jig.engine.physics.AbstractBodyLayer;
+
+/**
+ * Test the frog's sphere against every sphere of every active entity
+ * 
+ * @author vitaliy
+ *
+ */
+class SphereScan implements CollisionSearch {
+	
+	private final Frogger frog;
+	
+	private MovingEntity hit;
+	private int hitSphere;
+	
+	SphereScan(Frogger f) {
+		frog = f;
+	}
+	
+	public boolean find(AbstractBodyLayer<MovingEntity> l) {
+		double frogX = frog.getSphereX(0);
+		double frogY = frog.getSphereY(0);
+		double frogR = frog.getShape().getRadius(0);
+		double dist2;
+		
+		for (MovingEntity i : l) {
+			if (!i.isActive())
+				continue;
+			
+			CollisionShape shape = i.getShape();
+
+			for (int s = 0; s < shape.size(); s++) {
+				dist2 = (frogR + shape.getRadius(s)) * (frogR + shape.getRadius(s));
+				double dx = frogX - i.getSphereX(s);
+				double dy = frogY - i.getSphereY(s);
+
+				if (dx*dx + dy*dy < dist2) {
+					hit = i;
+					hitSphere = s;
+					return true;
+				}
+			}
+		}
+		hit = null;
+		return false;
+	}
+	
+	public MovingEntity getHit() {
+		return hit;
+	}
+	
+	public int getHitSphere() {
+		return hitSphere;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.List;
+
+import jig.engine.ImageResource;
+import jig.engine.ResourceFactory;
+
+/**
+ * Everything entities of one kind share: sprite frames, size, collision 
+ * spheres and pixel masks
+ * 
+ * Kinds are built once and numbered from 0, entities keep a reference to
+ * theirs instead of a frameset name, a shape and a mask each. The frames 
+ * are looked up in the ResourceFactory once, by resolveAll() after the
+ * sprite sheet is loaded or on first use, so spawning an entity no longer 
+ * builds a name and searches the frame cache.
+ * 
+ * @author vitaliy
+ *
+ */
+public final class SpriteKind {
+	
+	private static final SpriteKind[] KINDS = new SpriteKind[13];
+	
+	public static final SpriteKind FROG        = new SpriteKind(0,  "frog",        CollisionShape.FROG);
+	public static final SpriteKind CAR0        = new SpriteKind(1,  "car0",        CollisionShape.CAR);
+	public static final SpriteKind CAR1        = new SpriteKind(2,  "car1",        CollisionShape.CAR);
+	public static final SpriteKind CAR2        = new SpriteKind(3,  "car2",        CollisionShape.CAR);
+	public static final SpriteKind COPCAR      = new SpriteKind(4,  "copcar",      CollisionShape.CAR);
+	public static final SpriteKind TRUCK       = new SpriteKind(5,  "truck",       CollisionShape.TRUCK);
+	public static final SpriteKind SHORTLOG    = new SpriteKind(6,  "shortlog",    CollisionShape.SHORTLOG);
+	public static final SpriteKind LONGLOG     = new SpriteKind(7,  "longlog",     CollisionShape.LONGLOG);
+	public static final SpriteKind GOAL        = new SpriteKind(8,  "goal",        CollisionShape.GOAL);
+	public static final SpriteKind TURTLES     = new SpriteKind(9,  "turtles",     CollisionShape.TURTLES);
+	public static final SpriteKind CROCODILE   = new SpriteKind(10, "crocodile",   CollisionShape.CROCODILE);
+	public static final SpriteKind WHITE_DOT   = new SpriteKind(11, "white_dot",   CollisionShape.NONE);
+	public static final SpriteKind SMOKE_CLOUD = new SpriteKind(12, "smoke_cloud", CollisionShape.NONE);
+	
+	private static final SpriteKind[] CARS = { CAR0, CAR1, CAR2 };
+	
+	private final int id;
+	private final String frameset;
+	private final CollisionShape shape;
+	
+	// Resolved on first use, any thread resolves to the same cached frames
+	private volatile List<ImageResource> frames = null;
+	private volatile SpriteMask mask = null;
+	
+	private SpriteKind(int id, String name, CollisionShape s) {
+		this.id = id;
+		frameset = Main.SPRITE_SHEET + "#" + name;
+		shape = s;
+		KINDS[id] = this;
+	}
+	
+	/**
+	 * Look up the frames of every kind, call once the sprite sheet is loaded
+	 */
+	public static void resolveAll() {
+		for (SpriteKind k : KINDS)
+			k.getFrames();
+	}
+	
+	public static SpriteKind get(int id) {
+		return KINDS[id];
+	}
+	
+	public static int count() {
+		return KINDS.length;
+	}
+	
+	/**
+	 * @return - kind of the car sprite variant, 0 to Car.TYPES - 1
+	 */
+	public static SpriteKind car(int variant) {
+		return CARS[variant];
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * @return - name of the frameset in the sprite sheet
+	 */
+	public String getFrameset() {
+		return frameset;
+	}
+	
+	public CollisionShape getShape() {
+		return shape;
+	}
+	
+	public List<ImageResource> getFrames() {
+		List<ImageResource> f = frames;
+		if (f == null)
+			frames = f = ResourceFactory.getFactory().getFrames(frameset);
+		return f;
+	}
+	
+	public SpriteMask getMask() {
+		SpriteMask m = mask;
+		if (m == null)
+			mask = m = SpriteMask.get(frameset);
+		return m;
+	}
+	
+	public int getWidth() {
+		return getFrames().get(0).getWidth();
+	}
+	
+	public int getHeight() {
+		return getFrames().get(0).getHeight();
+	}
+	
+	public int getFrameCount() {
+		return getFrames().size();
+	}
+}
\ No newline at end of file
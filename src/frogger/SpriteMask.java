@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Opaque pixels of every frame of a sprite frameset, one bit per pixel
+ * 
+ * Frame rows are cut in 32 pixel words, bit i of a word is the i-th pixel
+ * from the left edge of the word. Pixels count as opaque from half alpha 
+ * up. The masks of the whole sprite sheet are built from frogger.xml and
+ * frogger_sprites.png the first time one is asked for, frames are numbered
+ * row by row like JIG numbers them.
+ * 
+ * @author vitaliy
+ *
+ */
+public final class SpriteMask {
+	
+	static final int ALPHA = 128;
+	
+	private static final SpriteMask EMPTY = new SpriteMask(null, 0, 0, 0, 0, 0, 0);
+	
+	private final int width;
+	private final int height;
+	private final int words;
+	
+	// bits[frame][y * words + word]
+	private final int[][] bits;
+	
+	private SpriteMask(BufferedImage sheet, int left, int top, int w, int h, int columns, int rows) {
+		width = w;
+		height = h;
+		words = (w + 31) / 32;
+		bits = new int[columns * rows][words * h];
+		
+		for (int f = 0; f < bits.length; f++) {
+			int x0 = left + (f % columns) * w;
+			int y0 = top + (f / columns) * h;
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					if ((sheet.getRGB(x0 + x, y0 + y) >>> 24) >= ALPHA)
+						bits[f][y * words + (x >>> 5)] |= 1 << x;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param frameset - name the sprite was built with, Main.SPRITE_SHEET + "#name"
+	 * @return - its masks, a mask without frames if there is no such frameset
+	 */
+	public static SpriteMask get(String frameset) {
+		SpriteMask m = Sheet.MASKS.get(frameset);
+		return m == null ? EMPTY : m;
+	}
+	
+	/**
+	 * @return - 32 pixels of row y of a frame from column from on, which has
+	 * to be above -32 and below getWidth(). Pixels off the frame are clear.
+	 */
+	public int row(int frame, int y, int from) {
+		int[] b = bits[frame];
+		int w = from >> 5;
+		int base = y * words;
+		long lo = w >= 0 ? b[base + w] & 0xffffffffL : 0;
+		long hi = w + 1 < words ? b[base + w + 1] & 0xffffffffL : 0;
+		return (int) ((lo | hi << 32) >>> (from & 31));
+	}
+	
+	public boolean isOpaque(int frame, int x, int y) {
+		return (bits[frame][y * words + (x >>> 5)] & (1 << x)) != 0;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public int getFrames() {
+		return bits.length;
+	}
+	
+	/**
+	 * Masks of the sprite sheet, loaded with the first use of this class
+	 */
+	private static class Sheet {
+		static final Map<String, SpriteMask> MASKS = load();
+		
+		private static Map<String, SpriteMask> load() {
+			Map<String, SpriteMask> masks = new HashMap<>();
+			ClassLoader cl = SpriteMask.class.getClassLoader();
+			
+			try (InputStream xml = cl.getResourceAsStream(Main.RSC_PATH + "frogger.xml");
+					InputStream png = cl.getResourceAsStream(Main.SPRITE_SHEET)) {
+				if (xml == null || png == null)
+					throw new IOException("sprite sheet not on the class path");
+				
+				BufferedImage sheet = ImageIO.read(png);
+				Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xml);
+				NodeList sets = doc.getElementsByTagName("frameset");
+				for (int i = 0; i < sets.getLength(); i++) {
+					Element e = (Element) sets.item(i);
+					masks.put(Main.SPRITE_SHEET + "#" + text(e, "name"), new SpriteMask(sheet,
+							number(e, "left", 0), number(e, "top", 0), 
+							number(e, "width", 0), number(e, "height", 0),
+							number(e, "columns", 1), number(e, "rows", 1)));
+				}
+			} catch (IOException | ParserConfigurationException | SAXException e) {
+				Logger.getLogger(SpriteMask.class.getName()).warning(
+						"Sprite masks unavailable: " + e);
+			}
+			return masks;
+		}
+		
+		private static String text(Element e, String tag) {
+			NodeList n = e.getElementsByTagName(tag);
+			return n.getLength() == 0 ? null : n.item(0).getTextContent().trim();
+		}
+		
+		private static int number(Element e, String tag, int absent) {
+			String s = text(e, tag);
+			return s == null ? absent : Integer.parseInt(s);
+		}
+	}
+}
\ No newline at end of file
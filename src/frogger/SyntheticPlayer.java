@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Scripted input for headless worlds
+ * 
+ * A player hands out one FroggerWorld key mask per update, the same masks
+ * Main builds from the keyboard. Keys have to be released between two
+ * jumps, just like on the real keyboard.
+ * 
+ * @author vitaliy
+ *
+ */
+public interface SyntheticPlayer {
+	
+	/**
+	 * @param w - world about to be updated
+	 * @param tick - number of updates done so far
+	 * @return - mask of pressed keys for this update
+	 */
+	int nextInput(FroggerWorld w, long tick);
+	
+	/**
+	 * Press a random arrow key, then let go of it
+	 */
+	class RandomWalk implements SyntheticPlayer {
+		private static final int[] KEYS = { FroggerWorld.KEY_UP, FroggerWorld.KEY_UP, 
+				FroggerWorld.KEY_LEFT, FroggerWorld.KEY_RIGHT, FroggerWorld.KEY_DOWN };
+		
+		private final GameRandom r;
+		
+		public RandomWalk(long seed) {
+			r = new GameRandom(seed);
+		}
+		
+		public int nextInput(FroggerWorld w, long tick) {
+			if ((tick & 1) != 0)
+				return 0;
+			return KEYS[r.nextInt(KEYS.length)];
+		}
+	}
+	
+	/**
+	 * Keep jumping forward
+	 */
+	class AlwaysUp implements SyntheticPlayer {
+		public int nextInput(FroggerWorld w, long tick) {
+			return (tick & 1) == 0 ? FroggerWorld.KEY_UP : 0;
+		}
+	}
+	
+	/**
+	 * Jump forward when the cell it lands on is safe, otherwise step aside
+	 * towards a column where it is, reading both rows off the world's 
+	 * bitboard. A jump up covers two bitboard rows.
+	 */
+	class Cautious implements SyntheticPlayer {
+		public int nextInput(FroggerWorld w, long tick) {
+			if ((tick & 1) != 0)
+				return 0;
+			
+			Bitboard bb = w.getBitboard();
+			Frogger f = w.getFrog();
+			int col = Bitboard.col(f.getPosition().getX());
+			int row = Bitboard.row(f.getPosition().getY());
+			
+			// columns col - 1, col and col + 1 in bits 0, 1 and 2
+			long ahead = bb.window(Bitboard.SAFE, row - 2, col - 1) & 7;
+			long here = bb.window(Bitboard.SAFE, row, col - 1) & 7;
+			if ((ahead & 2) != 0)
+				return FroggerWorld.KEY_UP;
+			if ((ahead & here & 1) != 0)
+				return FroggerWorld.KEY_LEFT;
+			if ((ahead & here & 4) != 0)
+				return FroggerWorld.KEY_RIGHT;
+			return 0;
+		}
+	}
+	
+	/**
+	 * Let the world's autopilot play
+	 */
+	class Auto implements SyntheticPlayer {
+		public int nextInput(FroggerWorld w, long tick) {
+			w.autopilotOn = true;
+			return 0;
+		}
+	}
+	
+	/**
+	 * Replay a recorded trace, one key mask byte per update, looping at the end
+	 */
+	class Replay implements SyntheticPlayer {
+		private final byte[] trace;
+		
+		public Replay(byte[] t) {
+			trace = t;
+		}
+		
+		public static Replay load(String file) throws IOException {
+			return new Replay(Files.readAllBytes(Paths.get(file)));
+		}
+		
+		public int nextInput(FroggerWorld w, long tick) {
+			if (trace.length == 0)
+				return 0;
+			return trace[(int) (tick % trace.length)];
+		}
+	}
+}
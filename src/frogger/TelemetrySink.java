@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-session game event log, written from the game thread without locks
+ * 
+ * Events are fixed size binary records in a preallocated ring buffer with a
+ * single producer (the game thread) and a single consumer (TelemetryWriter).
+ * When the ring is full new events are dropped and counted, the game thread
+ * never waits.
+ * 
+ * Record layout, RECORD_SIZE bytes:
+ *   wallTimeMs(8) session(4) gameTimeMs(4) type(2) detail(2) level(4) x(2) y(2) value(4)
+ * 
+ * @author vitaliy
+ *
+ */
+public class TelemetrySink {
+	
+	static final int RECORD_SIZE = 32;
+	
+	// Event types
+	static final short JUMP      = 1;
+	static final short DEATH     = 2;
+	static final short GOAL      = 3;
+	static final short BONUS     = 4;
+	static final short LEVEL     = 5;
+	static final short WIND      = 6;
+	static final short HEAT      = 7;
+	
+	// Death causes, the detail field of DEATH events
+	static final short CAUSE_VEHICLE       = 1;
+	static final short CAUSE_CROCODILE     = 2;
+	static final short CAUSE_DROWNED       = 3;
+	static final short CAUSE_OUT_OF_BOUNDS = 4;
+	static final short CAUSE_TIMEOUT       = 5;
+	
+	private final int session;
+	private final int capacity; // in records, power of two
+	private final ByteBuffer ring;
+	
+	private final AtomicLong head = new AtomicLong(); // next record to write
+	private final AtomicLong tail = new AtomicLong(); // next record to drain
+	private final AtomicLong dropped = new AtomicLong();
+	
+	private long cachedTail = 0;
+	
+	/**
+	 * @param sessionId - written into every record
+	 * @param records - ring size, rounded up to a power of two
+	 */
+	public TelemetrySink(int sessionId, int records) {
+		session = sessionId;
+		capacity = Integer.highestOneBit(Math.max(2, records - 1)) << 1;
+		ring = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+	}
+	
+	/**
+	 * Append one event, called from the game thread only
+	 */
+	public void emit(int gameTimeMs, short type, short detail, int level, int x, int y, int value) {
+		long h = head.get();
+		if (h - cachedTail >= capacity) {
+			cachedTail = tail.get();
+			if (h - cachedTail >= capacity) {
+				dropped.lazySet(dropped.get() + 1);
+				return;
+			}
+		}
+		
+		int p = (int) (h & (capacity - 1)) * RECORD_SIZE;
+		ring.putLong(p, System.currentTimeMillis());
+		ring.putInt(p + 8, session);
+		ring.putInt(p + 12, gameTimeMs);
+		ring.putShort(p + 16, type);
+		ring.putShort(p + 18, detail);
+		ring.putInt(p + 20, level);
+		ring.putShort(p + 24, (short) x);
+		ring.putShort(p + 26, (short) y);
+		ring.putInt(p + 28, value);
+		
+		// publish after the record is complete
+		head.lazySet(h + 1);
+	}
+	
+	/**
+	 * Copy waiting records into out, called from the writer thread only
+	 * 
+	 * @return - number of records copied
+	 */
+	int drainTo(ByteBuffer out) {
+		long t = tail.get();
+		long h = head.get();
+		int n = (int) Math.min(h - t, out.remaining() / RECORD_SIZE);
+		
+		for (int i = 0; i < n; i++) {
+			int p = (int) ((t + i) & (capacity - 1)) * RECORD_SIZE;
+			for (int j = 0; j < RECORD_SIZE; j += 8)
+				out.putLong(ring.getLong(p + j));
+		}
+		
+		tail.lazySet(t + n);
+		return n;
+	}
+	
+	public int getSession() {
+		return session;
+	}
+	
+	/**
+	 * @return - events lost because the ring was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+	
+	/**
+	 * @return - events waiting to be written
+	 */
+	public long getPending() {
+		return head.get() - tail.get();
+	}
+}
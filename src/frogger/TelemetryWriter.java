@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that drains TelemetrySinks into rolling files
+ * 
+ * Records from all registered sinks are batched into one direct buffer and
+ * written through a FileChannel. A new file, telemetry-000001.bin and so on,
+ * is started when the current one reaches the roll size. Numbering goes on
+ * after the files already in the directory, existing logs are never
+ * overwritten.
+ * 
+ * @author vitaliy
+ *
+ */
+public class TelemetryWriter extends Thread implements Closeable {
+	
+	static final long DEFAULT_ROLL_BYTES = 64L << 20;
+	private static final long IDLE_NANOS = 5000000L;
+	
+	Logger logger = Logger.getLogger(getClass().getName());
+	
+	private final Path dir;
+	private final long rollBytes;
+	private final CopyOnWriteArrayList<TelemetrySink> sinks = new CopyOnWriteArrayList<>();
+	private final ByteBuffer batch = ByteBuffer.allocateDirect(TelemetrySink.RECORD_SIZE * 4096);
+	
+	private FileChannel file;
+	private long fileBytes = 0;
+	private int fileIndex = 0;
+	private long written = 0;
+	private long droppedByClosedSinks = 0;
+	
+	private volatile boolean running = true;
+	
+	public TelemetryWriter(Path directory) {
+		this(directory, DEFAULT_ROLL_BYTES);
+	}
+	
+	public TelemetryWriter(Path directory, long roll) {
+		super("telemetry-writer");
+		setDaemon(true);
+		dir = directory;
+		rollBytes = roll;
+	}
+	
+	/**
+	 * Create a sink for one session and start draining it
+	 */
+	public TelemetrySink newSink(int session, int records) {
+		TelemetrySink s = new TelemetrySink(session, records);
+		sinks.add(s);
+		return s;
+	}
+	
+	/**
+	 * Stop draining a sink, whatever is still pending in it gets written first
+	 */
+	public void removeSink(TelemetrySink s) {
+		sinks.remove(s);
+		synchronized (this) {
+			while (s.getPending() > 0)
+				drain(s);
+			droppedByClosedSinks += s.getDropped();
+		}
+	}
+	
+	@Override
+	public void run() {
+		while (running) {
+			int n = 0;
+			synchronized (this) {
+				for (TelemetrySink s : sinks)
+					n += drain(s);
+				if (n == 0)
+					write();
+			}
+			if (n == 0)
+				LockSupport.parkNanos(IDLE_NANOS);
+		}
+	}
+	
+	/**
+	 * Move waiting records of one sink to the batch, writing out full batches
+	 */
+	private int drain(TelemetrySink s) {
+		int n = s.drainTo(batch);
+		if (!batch.hasRemaining())
+			write();
+		return n;
+	}
+	
+	private void write() {
+		if (batch.position() == 0)
+			return;
+		batch.flip();
+		try {
+			if (file == null || fileBytes >= rollBytes)
+				roll();
+			while (batch.hasRemaining())
+				fileBytes += file.write(batch);
+			written += batch.limit() / TelemetrySink.RECORD_SIZE;
+		} catch (IOException e) {
+			logger.warning("Telemetry batch lost: " + e.getMessage());
+		}
+		batch.clear();
+	}
+	
+	private void roll() throws IOException {
+		if (file != null)
+			file.close();
+		file = null;
+		if (fileIndex == 0) {
+			Files.createDirectories(dir);
+			fileIndex = lastIndex();
+		}
+		while (file == null) {
+			fileIndex++;
+			try {
+				file = FileChannel.open(dir.resolve(String.format("telemetry-%06d.bin", fileIndex)),
+						StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			} catch (FileAlreadyExistsException e) {
+				// another writer took this number, try the next one
+			}
+		}
+		fileBytes = 0;
+	}
+	
+	/**
+	 * @return - highest number of the telemetry files in the directory, 0 if none
+	 */
+	private int lastIndex() throws IOException {
+		int last = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "telemetry-*.bin")) {
+			for (Path p : files) {
+				String name = p.getFileName().toString();
+				try {
+					last = Math.max(last, Integer.parseInt(name.substring(10, name.length() - 4)));
+				} catch (NumberFormatException e) {
+					// not one of ours
+				}
+			}
+		}
+		return last;
+	}
+	
+	/**
+	 * @return - records written to disk so far
+	 */
+	public synchronized long getWritten() {
+		return written;
+	}
+	
+	/**
+	 * @return - records lost to full rings, over all sinks ever registered
+	 */
+	public synchronized long getDropped() {
+		long n = droppedByClosedSinks;
+		for (TelemetrySink s : sinks)
+			n += s.getDropped();
+		return n;
+	}
+	
+	/**
+	 * Drain everything that is left and close the current file
+	 */
+	public void close() throws IOException {
+		running = false;
+		try {
+			join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			for (TelemetrySink s : sinks)
+				while (s.getPending() > 0)
+					drain(s);
+			write();
+			if (file != null)
+				file.close();
+		}
+	}
+}
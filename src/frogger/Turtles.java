@@ -24,6 +24,8 @@
  */
 
 package frogger;
+import java.nio.ByteBuffer;
+
 import jig.engine.util.Vector2D;
 
 
@@ -40,22 +42,36 @@ import jig.engine.util.Vector2D;
  */
 public class Turtles extends MovingEntity{
 	
-	public static final String COLSMALL = "colSmall";
-	
-	private long underwaterTime   = 0;
 	private long underwaterPeriod = 1200;
 	
+	// Traffic time of the next dive or surfacing, -1 until scheduled
+	private long diveMs = -1;
+	
 	protected boolean isUnderwater = false;
 	
 	// Animation variables
 	private boolean isAnimating = false;
-	private long localDeltaMs;
-	private long startAnimatingMs;
-	private long timerMs;
+	private long stepMs;
 	private long animatingPeriod = 150; 
 	private int aFrame = 0;
 	private int maxAFrame = 2; // Animate only 2 frames
 	
+	private final Scheduler.Task dive = new Scheduler.Task() {
+		public void run(Scheduler s) {
+			if (!isActive())
+				return;
+			diveMs = s.now() + underwaterPeriod;
+			s.at(diveMs, this);
+			startAnimation(s);
+		}
+	};
+	
+	private final Scheduler.Task step = new Scheduler.Task() {
+		public void run(Scheduler s) {
+			animate(s);
+		}
+	};
+	
 	/**
 	 * Build a Turtle object that is floating by default
 	 * 
@@ -66,7 +82,7 @@ public class Turtles extends MovingEntity{
 	 * @param v
 	 */
 	public Turtles (Vector2D pos, Vector2D v) {
-		super(Main.SPRITE_SHEET + "#turtles");
+		super(SpriteKind.TURTLES);
 		init(pos,v);
 	}
 	
@@ -78,7 +94,7 @@ public class Turtles extends MovingEntity{
 	 * @param water - 0 submerged; 1 - floating
 	 */
 	public Turtles (Vector2D pos, Vector2D v, int water) {
-		super(Main.SPRITE_SHEET + "#turtles");
+		super(SpriteKind.TURTLES);
 		init(pos,v);
 		
 		
@@ -95,19 +111,13 @@ public class Turtles extends MovingEntity{
 	/**
 	 * Initializing the Turtles object
 	 * 
-	 * building collision spheres, etc
+	 * position, velocity and facing
 	 * 
 	 * @param pos - position vector
 	 * @param v   - velocity vector
 	 */
 	public void init(Vector2D pos, Vector2D v) {
 		position = pos;
-		Vector2D posSphere1 = position;
-		Vector2D posSphere2 = new Vector2D(position.getX()+32, position.getY());
-		Vector2D posSphere3 = new Vector2D(position.getX()+64, position.getY());
-		collisionObjects.add(new CollisionObject(COLSMALL, posSphere1));
-		collisionObjects.add(new CollisionObject(COLSMALL, posSphere2));
-		collisionObjects.add(new CollisionObject(COLSMALL, posSphere3));
 		velocity = v;
 		
 		// Turtles floating direction, left/right		
@@ -119,60 +129,77 @@ public class Turtles extends MovingEntity{
 
 	
 	/**
-	 * Timer to go under water or float
+	 * Put the dive timer and a running animation on the traffic time line
 	 */
-	public void checkAirTime() {
-		underwaterTime += localDeltaMs;  
-		if (underwaterTime > underwaterPeriod) {
-			underwaterTime = 0;
-			startAnimation();
-		}
+	@Override
+	public void schedule(Scheduler s) {
+		if (!isActive())
+			return;
+		
+		if (diveMs < 0)
+			diveMs = s.now() + underwaterPeriod;
+		s.at(diveMs, dive);
+		
+		if (isAnimating)
+			s.at(stepMs, step);
 	}
 	
-	
 	/**
-	 * Perform Animating sequence of submerging/floating
-	 * based on abunch of local time variables at the top
+	 * Perform one step of the submerging/floating sequence,
+	 * the next step follows an animatingPeriod later
 	 */
-	public void animate() {
+	public void animate(Scheduler s) {
 		if (!isAnimating) 
 			return;
 		
-		if (startAnimatingMs < timerMs) {
-			startAnimatingMs = timerMs+animatingPeriod;
-			
-			if (isUnderwater)
-				setFrame(getFrame()-1);
-			else
-				setFrame(getFrame()+1);
-
-			aFrame++;
-		}
+		if (isUnderwater)
+			setFrame(getFrame()-1);
+		else
+			setFrame(getFrame()+1);
+		aFrame++;
 		
 		if (aFrame >= maxAFrame) {
 			isAnimating = false;
 			isUnderwater = !isUnderwater;
+			return;
 		}
+		
+		stepMs = s.now() + animatingPeriod;
+		s.at(stepMs, step);
 	}
 	
 	/**
 	 * Initiate the animation by reseting the animation variables
 	 * 
-	 * and flagging "isAnimationg"
+	 * and flagging "isAnimationg", the first step comes with the next update
 	 */
-	public void startAnimation() {
-		isAnimating = true;
-		startAnimatingMs = 0;
-		timerMs = 0;
+	public void startAnimation(Scheduler s) {
 		aFrame = 0;
+		if (isAnimating)
+			return;
+		
+		isAnimating = true;
+		stepMs = s.now();
+		s.at(stepMs, step);
+	}
+	
+	@Override
+	public void saveState(ByteBuffer b) {
+		super.saveState(b);
+		b.putLong(diveMs);
+		b.put((byte) (isUnderwater ? 1 : 0));
+		b.put((byte) (isAnimating ? 1 : 0));
+		b.putLong(stepMs);
+		b.putInt(aFrame);
 	}
 	
 	@Override
-	public void update(final long deltaMs) {
-		super.update(deltaMs);
-		localDeltaMs = deltaMs;
-		timerMs += localDeltaMs;
-	    checkAirTime();
-	    animate();
+	public void restoreState(ByteBuffer b) {
+		super.restoreState(b);
+		diveMs = b.getLong();
+		isUnderwater = b.get() != 0;
+		isAnimating = b.get() != 0;
+		stepMs = b.getLong();
+		aFrame = b.getInt();
 	}
 }
\ No newline at end of file
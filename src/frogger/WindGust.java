@@ -25,7 +25,7 @@
 
 package frogger;
 
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 import jig.engine.util.Vector2D;
 /**
@@ -39,17 +39,38 @@ public class WindGust {
 	static final int PERIOD    = 5000; //milliseconds
 	static final int DURATION  = 3000; //milliseconds
 	
-	Random r;
+	static final SpriteKind PARTICLE_SPRITE = SpriteKind.WHITE_DOT;
 	
-	private long timeMs;
-	private long durationMs;
+	GameRandom r;
+	
+	// Play time a gust may start again, and when the current one started
+	private final Scheduler time;
+	private boolean isReady;
+	private long readyMs;
+	private long startMs;
 	
 	private boolean isWindy;
 	
-	public WindGust() {
-		timeMs = 0;
+	private final int worldHeight;
+	
+	private final Scheduler.Task ready = new Scheduler.Task() {
+		public void run(Scheduler s) {
+			isReady = true;
+		}
+	};
+	
+	public WindGust(WorldLayout l, long seed, Scheduler playTime) {
+		worldHeight = l.getHeight();
+		time = playTime;
 		isWindy = false;
-		r = new Random(System.currentTimeMillis());
+		r = new GameRandom(seed);
+		rearm(PERIOD);
+	}
+	
+	private void rearm(long periodMs) {
+		isReady = false;
+		readyMs = time.now() + periodMs;
+		time.at(readyMs, ready);
 	}
 	
 	/**
@@ -63,7 +84,7 @@ public class WindGust {
 			return;
 		}
 		
-		if (isWindy && durationMs < DURATION) {
+		if (isWindy && time.now() - startMs < DURATION) {
 			double vPos = deltaMs*r.nextDouble()*(0.01*level);
 			f.windReposition(new Vector2D(vPos, 0));
 		} else {
@@ -78,15 +99,15 @@ public class WindGust {
 	 */
 	public void start(final int level) {
 		
-		if (!isWindy && timeMs > PERIOD) {
+		if (!isWindy && isReady) {
 			
 			if (r.nextInt(100) < level*10) {
-				durationMs = 1;
+				startMs = time.now() - 1;
 				isWindy = true;
-				AudioEfx.wind.play(0.2);
+				AudioEfx.play(AudioEfx.wind, 0.2);
 			}
 			
-			timeMs = 0;	
+			rearm(PERIOD);
 		}
 		
 	}
@@ -106,16 +127,36 @@ public class WindGust {
 		if (r.nextInt(100) > level*10)
 			return null;
 		
-		int yPos = r.nextInt(13*32)+32;         // visible area in y-axis of the game
+		int yPos = r.nextInt(worldHeight-32)+32; // visible area in y-axis of the game
 		Vector2D pos = new Vector2D(0, yPos);   // start behind left side
 		
 		// Build somewhat random velocity vector for each wind particle, looks cool
 		Vector2D v = new Vector2D(0.2+r.nextDouble(),(r.nextDouble()-0.5)*0.1); 
-		return new Particle(Main.SPRITE_SHEET + "#white_dot", pos,v);
+		return new Particle(PARTICLE_SPRITE, pos,v);
+	}
+	
+	public boolean isWindy() {
+		return isWindy;
+	}
+	
+	/**
+	 * Play time is part of the world snapshot, only the due times are saved here
+	 */
+	public void saveState(ByteBuffer b) {
+		b.put((byte) (isReady ? 1 : 0));
+		b.putLong(readyMs);
+		b.putLong(startMs);
+		b.put((byte) (isWindy ? 1 : 0));
+		b.putLong(r.getState());
 	}
 	
-	public void update(final long deltaMs) {
-		timeMs += deltaMs;
-		durationMs += deltaMs;
+	public void restoreState(ByteBuffer b) {
+		isReady = b.get() != 0;
+		readyMs = b.getLong();
+		startMs = b.getLong();
+		isWindy = b.get() != 0;
+		r.setState(b.getLong());
+		if (!isReady)
+			time.at(readyMs, ready);
 	}
 }
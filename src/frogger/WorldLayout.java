@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.util.Arrays;
+
+import jig.engine.util.Vector2D;
+
+/**
+ * Size of the world and what runs in every lane
+ * 
+ * Rows from the top: the HUD, the goals, the river lanes, a median, the
+ * road lanes and the starting row. arcade() is the original 13x14 tile game,
+ * generate() repeats the arcade lanes for any width and lane count.
+ * 
+ * The layout is picked once at startup, e.g. -Dfrogger.layout=64x50x50 for
+ * 64 columns, 50 river and 50 road lanes, and shared by all worlds.
+ * 
+ * @author vitaliy
+ *
+ */
+public class WorldLayout {
+	
+	static final int TILE = 32;
+	
+	static final int ROAD       = 0;
+	static final int TURTLES    = 1;
+	static final int CROCODILES = 2;
+	
+	static final int GOAL_ROW = 1;
+	
+	/**
+	 * One lane of traffic
+	 */
+	public static final class Lane {
+		public final int row;
+		public final int type;
+		public final double speed;  // at level 0, pixels per ms
+		public final int chance;    // of turtles or crocodiles, in percent
+		
+		Lane(int r, int t, double s, int c) {
+			row = r;
+			type = t;
+			speed = s;
+			chance = c;
+		}
+		
+		/**
+		 * Where the lane's entities enter the world
+		 */
+		public Vector2D getStart(int worldWidth) {
+			double x;
+			if (speed < 0)
+				x = worldWidth;
+			else
+				x = type == TURTLES ? -(TILE*3) : -(TILE*4);
+			return new Vector2D(x, row*TILE);
+		}
+	}
+	
+	// The arcade lanes, top to bottom
+	private static final Lane[] ARCADE_RIVER = {
+		new Lane(0, TURTLES,     0.06,  40),
+		new Lane(0, CROCODILES, -0.04,  30),
+		new Lane(0, TURTLES,     0.09,  50),
+		new Lane(0, CROCODILES,  0.045, 20),
+		new Lane(0, TURTLES,    -0.045, 10),
+	};
+	
+	private static final Lane[] ARCADE_ROAD = {
+		new Lane(0, ROAD, -0.1,   0),
+		new Lane(0, ROAD,  0.08,  0),
+		new Lane(0, ROAD, -0.12,  0),
+		new Lane(0, ROAD,  0.075, 0),
+		new Lane(0, ROAD, -0.05,  0),
+	};
+	
+	private static WorldLayout current = System.getProperty("frogger.layout") == null 
+			? arcade() : parse(System.getProperty("frogger.layout"));
+	
+	private final int columns;
+	private final int rows;
+	private final int riverLanes;
+	private final int roadLanes;
+	
+	// river lanes top to bottom, then road lanes
+	private final Lane[] lanes;
+	
+	private WorldLayout(int c, int river, int road) {
+		columns = c;
+		riverLanes = river;
+		roadLanes = road;
+		rows = 4 + river + road;
+		
+		lanes = new Lane[river + road];
+		for (int i = 0; i < river; i++) {
+			Lane l = ARCADE_RIVER[i % ARCADE_RIVER.length];
+			lanes[i] = new Lane(getRiverTop() + 1 + i, l.type, l.speed, l.chance);
+		}
+		for (int i = 0; i < road; i++) {
+			Lane l = ARCADE_ROAD[i % ARCADE_ROAD.length];
+			lanes[river + i] = new Lane(getRoadTop() + i, l.type, l.speed, l.chance);
+		}
+	}
+	
+	public static WorldLayout arcade() {
+		return new WorldLayout(13, 5, 5);
+	}
+	
+	/**
+	 * @param columns - world width in tiles, at least 5
+	 */
+	public static WorldLayout generate(int columns, int riverLanes, int roadLanes) {
+		if (columns < 5 || riverLanes < 0 || roadLanes < 0)
+			throw new IllegalArgumentException("Bad layout " + columns + "x" + riverLanes + "x" + roadLanes);
+		return new WorldLayout(columns, riverLanes, roadLanes);
+	}
+	
+	/**
+	 * @param spec - COLUMNSxRIVERxROAD, e.g. 13x5x5 for the arcade layout
+	 */
+	public static WorldLayout parse(String spec) {
+		String[] p = spec.toLowerCase().split("x");
+		if (p.length != 3)
+			throw new IllegalArgumentException("Layout is COLUMNSxRIVERxROAD, not " + spec);
+		return generate(Integer.parseInt(p[0]), Integer.parseInt(p[1]), Integer.parseInt(p[2]));
+	}
+	
+	/**
+	 * Layout of the worlds built from now on
+	 */
+	public static WorldLayout current() {
+		return current;
+	}
+	
+	public static void setCurrent(WorldLayout l) {
+		current = l;
+	}
+	
+	/**
+	 * Goal columns for a level, level 1 has one pair of goals in the middle,
+	 * later levels two pairs, wider worlds proportionally more
+	 */
+	public int[] getGoalColumns(int level) {
+		int pairs = level == 1 ? Math.max(1, columns / 13) : Math.max(2, 2 * columns / 13);
+		int center = columns / 2;
+		
+		int[] c = new int[2 * pairs];
+		int n = 0;
+		for (int k = 0; k < pairs; k++) {
+			int left = center - 1 - 2*k;
+			int right = center + 1 + 2*k;
+			if (left >= 1)
+				c[n++] = left;
+			if (right <= columns - 2)
+				c[n++] = right;
+		}
+		return n == c.length ? c : Arrays.copyOf(c, n);
+	}
+	
+	public Vector2D getFroggerStart() {
+		return new Vector2D((columns / 2)*TILE, getStartRow()*TILE);
+	}
+	
+	public int getColumns() {
+		return columns;
+	}
+	
+	public int getRows() {
+		return rows;
+	}
+	
+	public int getWidth() {
+		return columns*TILE;
+	}
+	
+	public int getHeight() {
+		return rows*TILE;
+	}
+	
+	public Lane[] getLanes() {
+		return lanes;
+	}
+	
+	public int getRiverLanes() {
+		return riverLanes;
+	}
+	
+	public int getRoadLanes() {
+		return roadLanes;
+	}
+	
+	/**
+	 * The river starts with the goal row, a frog there that misses the goals drowns
+	 */
+	public int getRiverTop() {
+		return GOAL_ROW;
+	}
+	
+	public int getRiverBottom() {
+		return GOAL_ROW + riverLanes;
+	}
+	
+	public int getRoadTop() {
+		return getRiverBottom() + 2;
+	}
+	
+	public int getRoadBottom() {
+		return getRoadTop() + roadLanes - 1;
+	}
+	
+	public int getStartRow() {
+		return rows - 1;
+	}
+	
+	public boolean isRiverRow(int row) {
+		return row > GOAL_ROW && row <= getRiverBottom();
+	}
+	
+	@Override
+	public String toString() {
+		return columns + "x" + riverLanes + "x" + roadLanes;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import jig.engine.physics.AbstractBodyLayer;
+import jig.engine.util.Vector2D;
+
+/**
+ * Flat binary layout of the game world
+ * 
+ * Main writes its own counters and then hands the layers to this class.
+ * Every entity becomes a kind byte, a variant int and the fields written
+ * by its saveState(). Restoring walks the same records and reuses the
+ * entity already sitting at the same layer index when it is of the same
+ * kind, so restoring a recent snapshot mostly just overwrites fields.
+ * 
+ * @author vitaliy
+ *
+ */
+public class WorldSnapshot {
+	
+	static final int MAGIC   = 0x46524F47; // "FROG"
+	static final int VERSION = 8;
+	
+	// Large enough for a busy level of the classic layout with a full screen
+	// of wind particles, bigger worlds need bound() bytes
+	static final int CAPACITY = 1 << 18;
+	
+	// Upper bounds of the parts of a snapshot, with room to spare
+	static final int FIXED_BYTES  = 1024; // header, counters, weather, audio, bonus
+	static final int FROG_BYTES   = 256;  // state plus follow index
+	static final int GOAL_BYTES   = 64;   // goal manager entry plus layer record
+	static final int LANE_BYTES   = 128;
+	static final int ENTITY_BYTES = 96;   // kind, variant and the largest saveState()
+	
+	static final byte GOAL          = 0;
+	static final byte CAR           = 1;
+	static final byte COPCAR        = 2;
+	static final byte TRUCK         = 3;
+	static final byte SHORTLOG      = 4;
+	static final byte LONGLOG       = 5;
+	static final byte TURTLES       = 6;
+	static final byte CROCODILE     = 7;
+	static final byte WIND_PARTICLE = 8;
+	static final byte HEAT_PARTICLE = 9;
+	
+	private static final Vector2D ORIGIN = new Vector2D(0,0);
+	private static final Vector2D STILL  = new Vector2D(1,0);
+	
+	// Previous layer members, kept around for reuse while restoring
+	private final List<MovingEntity> scratch = new ArrayList<>();
+	
+	/**
+	 * @return - a buffer big enough for any snapshot of a single frog world
+	 */
+	public static ByteBuffer allocate() {
+		return ByteBuffer.allocateDirect(CAPACITY);
+	}
+	
+	/**
+	 * @return - a buffer big enough for any snapshot of a crowd of that many frogs
+	 */
+	public static ByteBuffer allocate(int frogs) {
+		return ByteBuffer.allocateDirect(CAPACITY + Math.max(0, frogs - 1) * FROG_BYTES);
+	}
+	
+	/**
+	 * A buffer big enough for a snapshot of w as it is now, and for some
+	 * growth of its layers
+	 */
+	public static ByteBuffer allocate(FroggerWorld w) {
+		return ByteBuffer.allocateDirect(Math.max(CAPACITY, 2 * bound(w)));
+	}
+	
+	/**
+	 * @return - most bytes a snapshot of w can take right now
+	 */
+	public static int bound(FroggerWorld w) {
+		return FIXED_BYTES 
+				+ w.getFrogs().size() * FROG_BYTES 
+				+ w.getGoalManager().get().size() * GOAL_BYTES
+				+ w.getLaneCount() * LANE_BYTES
+				+ (w.getMovingObjectsLayer().size() + w.getParticleLayer().size()) * ENTITY_BYTES;
+	}
+	
+	public static void writeHeader(ByteBuffer b) {
+		b.putInt(MAGIC);
+		b.putInt(VERSION);
+	}
+	
+	public static void readHeader(ByteBuffer b) {
+		if (b.getInt() != MAGIC || b.getInt() != VERSION)
+			throw new IllegalArgumentException("Not a Frogger world snapshot");
+	}
+	
+	/**
+	 * Write every member of the layer
+	 * 
+	 * Goals are referenced by their index in the GoalManager, their state is
+	 * already part of the GoalManager section
+	 */
+	public void saveLayer(AbstractBodyLayer<MovingEntity> l, List<Goal> goals, ByteBuffer b) {
+		int n = l.size();
+		b.putInt(n);
+		for (int i = 0; i < n; i++) {
+			MovingEntity m = l.get(i);
+			byte kind = kindOf(m);
+			b.put(kind);
+			
+			if (kind == GOAL) {
+				b.putInt(goals.indexOf(m));
+				continue;
+			}
+			
+			b.putInt(kind == CAR ? ((Car) m).variant : 0);
+			m.saveState(b);
+		}
+	}
+	
+	public void restoreLayer(AbstractBodyLayer<MovingEntity> l, List<Goal> goals, ByteBuffer b) {
+		scratch.clear();
+		for (int i = 0; i < l.size(); i++)
+			scratch.add(l.get(i));
+		l.clear();
+		
+		int n = b.getInt();
+		for (int i = 0; i < n; i++) {
+			byte kind = b.get();
+			int variant = b.getInt();
+			
+			if (kind == GOAL) {
+				l.add(goals.get(variant));
+				continue;
+			}
+			
+			MovingEntity m = i < scratch.size() ? scratch.get(i) : null;
+			if (m == null || kindOf(m) != kind || 
+					(kind == CAR && ((Car) m).variant != variant))
+				m = build(kind, variant);
+			
+			m.restoreState(b);
+			l.add(m);
+		}
+		scratch.clear();
+	}
+	
+	/**
+	 * Snapshot kind of a moving entity, see the constants above
+	 */
+	public static byte kindOf(MovingEntity m) {
+		if (m instanceof Goal)      return GOAL;
+		if (m instanceof Car)       return CAR;
+		if (m instanceof CopCar)    return COPCAR;
+		if (m instanceof Truck)     return TRUCK;
+		if (m instanceof ShortLog)  return SHORTLOG;
+		if (m instanceof LongLog)   return LONGLOG;
+		if (m instanceof Turtles)   return TURTLES;
+		if (m instanceof Crocodile) return CROCODILE;
+		
+		if (m instanceof Particle && 
+				m.getKind() == HeatWave.PARTICLE_SPRITE)
+			return HEAT_PARTICLE;
+		
+		return WIND_PARTICLE;
+	}
+	
+	/**
+	 * Build a blank entity of the given kind, restoreState() fills it in.
+	 * The variant of a goal is its index
+	 */
+	static MovingEntity build(byte kind, int variant) {
+		switch(kind) {
+		case GOAL:
+			return new Goal(variant);
+		case CAR:
+			return new Car(ORIGIN, STILL, variant);
+		case COPCAR:
+			return new CopCar(ORIGIN, STILL);
+		case TRUCK:
+			return new Truck(ORIGIN, STILL);
+		case SHORTLOG:
+			return new ShortLog(ORIGIN, STILL);
+		case LONGLOG:
+			return new LongLog(ORIGIN, STILL);
+		case TURTLES:
+			return new Turtles(ORIGIN, STILL);
+		case CROCODILE:
+			return new Crocodile(ORIGIN, STILL);
+		case HEAT_PARTICLE:
+			return new Particle(HeatWave.PARTICLE_SPRITE, ORIGIN, STILL);
+		case WIND_PARTICLE:
+			return new Particle(WindGust.PARTICLE_SPRITE, ORIGIN, STILL);
+		default:
+			throw new IllegalArgumentException("Unknown entity kind " + kind);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2009 Vitaliy Pavlenko
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package frogger.vector;
+
+import frogger.SphereKernel;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SphereKernel on the incubating Vector API, one vector of spheres per step
+ * 
+ * Multiplies and adds are done lane by lane without fusing, so every test
+ * gives exactly the result of ScalarSphereKernel. Lives in its own package
+ * so the rest of the game builds without the incubator module:
+ * 
+ *   javac --add-modules jdk.incubator.vector -cp lib/jig-1.7.5.jar:bin 
+ *         -d bin src/frogger/vector/*.java
+ *   java --add-modules jdk.incubator.vector -Dfrogger.simd=true ...
+ * 
+ * @author vitaliy
+ *
+ */
+public class VectorSphereKernel implements SphereKernel {
+	
+	private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+	private static final double NONE = Double.POSITIVE_INFINITY;
+	
+	public int firstKey(double fx, double fy, double fr, 
+			double[] x, double[] y, double[] r, double[] key, int from, int to) {
+		double k = NONE;
+		int i = from;
+		int upper = from + S.loopBound(to - from);
+		
+		// spans shorter than a vector go straight to the tail
+		if (i < upper) {
+			DoubleVector vfx = DoubleVector.broadcast(S, fx);
+			DoubleVector vfy = DoubleVector.broadcast(S, fy);
+			DoubleVector vfr = DoubleVector.broadcast(S, fr);
+			DoubleVector best = DoubleVector.broadcast(S, NONE);
+			
+			for (; i < upper; i += S.length()) {
+				DoubleVector d = vfr.add(DoubleVector.fromArray(S, r, i));
+				DoubleVector dx = vfx.sub(DoubleVector.fromArray(S, x, i));
+				DoubleVector dy = vfy.sub(DoubleVector.fromArray(S, y, i));
+				VectorMask<Double> hit = dx.mul(dx).add(dy.mul(dy)).lt(d.mul(d));
+				if (hit.anyTrue())
+					best = best.lanewise(VectorOperators.MIN, DoubleVector.fromArray(S, key, i), hit);
+			}
+			k = best.reduceLanes(VectorOperators.MIN);
+		}
+		
+		// the tail, masked loads are slow on current JDKs
+		for (; i < to; i++) {
+			double d = fr + r[i];
+			double dx = fx - x[i];
+			double dy = fy - y[i];
+			if (dx*dx + dy*dy < d * d && key[i] < k)
+				k = key[i];
+		}
+		return k == NONE ? -1 : (int) k;
+	}
+	
+	public void firstKeys(double[] fx, double[] fy, double[] fr, int frogs, 
+			double[] x, double[] y, double[] r, double[] key, int from, int to, int[] hits) {
+		for (int f = 0; f < frogs; f++)
+			hits[f] = firstKey(fx[f], fy[f], fr[f], x, y, r, key, from, to);
+	}
+}
\ No newline at end of file